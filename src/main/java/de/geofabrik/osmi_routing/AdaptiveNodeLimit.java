@@ -0,0 +1,112 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.util.Arrays;
+
+import de.geofabrik.osmi_routing.algorithm.DijkstraWithLimits;
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+/**
+ * Node limit of routing requests which adapts to the observed search space, separately for each
+ * road class.
+ *
+ * The limits are derived once by a calibration pass before the detection. It runs the searches
+ * of a fixed sample of the candidates with the maximum limit. For every road class with at least
+ * MIN_SAMPLES successful searches, the limit is set to the number of reached nodes which was
+ * sufficient for QUANTILE of them, plus a margin. Searches which would need more nodes are rare
+ * and usually end with TOO_MANY_NODES anyway, therefore the limit stops the work on them early.
+ * Failed searches are not counted. The limit never exceeds the configured maximum.
+ *
+ * After the calibration, the limits do not change any more. They do not depend on the number of
+ * workers, the order in which the workers process the candidates or a resumed run, therefore
+ * the output does not either.
+ *
+ * One instance is shared by all workers. Recording is thread-safe. The calibration must run
+ * after all searches of the calibration pass are finished.
+ */
+public class AdaptiveNodeLimit {
+
+    static final int MIN_LIMIT = 16;
+    static final int MIN_SAMPLES = 100;
+    static final double QUANTILE = 0.99;
+    static final double MARGIN = 1.25;
+
+    private final int maxLimit;
+    private final int[] limits;
+    // histogram of reached nodes of successful searches of the calibration pass
+    private final long[][] successfulSearches;
+    private volatile boolean calibrated = false;
+
+    public AdaptiveNodeLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+        int classes = RoadClass.values().length;
+        limits = new int[classes];
+        Arrays.fill(limits, maxLimit);
+        successfulSearches = new long[classes][2 * maxLimit + 1];
+    }
+
+    /**
+     * Get the node limit of a road class, the maximum limit before the calibration.
+     */
+    public int getLimit(RoadClass roadClass) {
+        return limits[roadClass.ordinal()];
+    }
+
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+
+    /**
+     * Record a search of the calibration pass.
+     */
+    public synchronized void record(RoadClass roadClass, DijkstraWithLimits.Status status, int reachedNodes) {
+        if (calibrated || status != DijkstraWithLimits.Status.OK) {
+            return;
+        }
+        long[] histogram = successfulSearches[roadClass.ordinal()];
+        ++histogram[Math.min(reachedNodes, histogram.length - 1)];
+    }
+
+    /**
+     * Set the limits based on the recorded searches. Later searches are not recorded any more.
+     */
+    public synchronized void calibrate() {
+        for (int c = 0; c < limits.length; ++c) {
+            long[] histogram = successfulSearches[c];
+            long successful = 0;
+            for (long count : histogram) {
+                successful += count;
+            }
+            if (successful < MIN_SAMPLES) {
+                // too few searches to tell
+                continue;
+            }
+            long sum = 0;
+            int required = 0;
+            while (sum < QUANTILE * successful) {
+                sum += histogram[required];
+                ++required;
+            }
+            int limit = (int) Math.ceil(required * MARGIN);
+            limits[c] = Math.max(MIN_LIMIT, Math.min(maxLimit, limit));
+        }
+        calibrated = true;
+    }
+}
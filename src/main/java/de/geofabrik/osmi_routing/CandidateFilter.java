@@ -0,0 +1,139 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * First pass of the detection which selects the nodes worth a closer look.
+ *
+ * A node is a candidate if it has exactly one edge (dead end). Removed nodes, nodes without OSM ID
+ * and nodes tagged with noexit=yes are left out. Duplicated edges are detected separately by
+ * {@link DuplicatedEdgeFinder}.
+ *
+ * The node ID range is split into blocks which are scanned in parallel. The candidates of the
+ * blocks are concatenated in order, therefore the result is sorted by node ID.
+ */
+class CandidateFilter extends RecursiveTask<int[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Blocks with less nodes are scanned by a single thread. */
+    static final int BLOCK_SIZE = 65536;
+
+    private final GraphHopperStorage storage;
+    private final OsmIdAndNoExitStore nodeInfoStore;
+    private final int startId;
+    private final int count;
+    private final AtomicInteger deadEnds;
+
+    private CandidateFilter(GraphHopperStorage storage, OsmIdAndNoExitStore nodeInfoStore, int startId, int count,
+            AtomicInteger deadEnds) {
+        this.storage = storage;
+        this.nodeInfoStore = nodeInfoStore;
+        this.startId = startId;
+        this.count = count;
+        this.deadEnds = deadEnds;
+    }
+
+    /**
+     * Get the IDs of all candidate nodes in ascending order.
+     */
+    static int[] findCandidates(ForkJoinPool pool, GraphHopperStorage storage, OsmIdAndNoExitStore nodeInfoStore) {
+        AtomicInteger deadEnds = new AtomicInteger();
+        int[] candidates = findCandidates(pool, storage, nodeInfoStore, deadEnds);
+        UnconnectedFinderManager.logger.info("{} of {} nodes are dead-end candidates ({} dead ends in total)",
+                candidates.length, storage.getNodes(), deadEnds.get());
+        return candidates;
+    }
+
+    /**
+     * Get the IDs of all candidate nodes in ascending order.
+     *
+     * @param deadEnds counter the number of dead ends is added to, including those which are no
+     * candidates
+     */
+    static int[] findCandidates(ForkJoinPool pool, GraphHopperStorage storage, OsmIdAndNoExitStore nodeInfoStore,
+            AtomicInteger deadEnds) {
+        return pool.invoke(new CandidateFilter(storage, nodeInfoStore, 0, storage.getNodes(), deadEnds));
+    }
+
+    @Override
+    protected int[] compute() {
+        if (count > BLOCK_SIZE) {
+            int half = count / 2;
+            CandidateFilter first = new CandidateFilter(storage, nodeInfoStore, startId, half, deadEnds);
+            CandidateFilter second = new CandidateFilter(storage, nodeInfoStore, startId + half, count - half, deadEnds);
+            second.fork();
+            int[] firstCandidates = first.compute();
+            int[] secondCandidates = second.join();
+            int[] candidates = new int[firstCandidates.length + secondCandidates.length];
+            System.arraycopy(firstCandidates, 0, candidates, 0, firstCandidates.length);
+            System.arraycopy(secondCandidates, 0, candidates, firstCandidates.length, secondCandidates.length);
+            return candidates;
+        }
+        return scan();
+    }
+
+    private int[] scan() {
+        EdgeExplorer explorer = storage.createEdgeExplorer();
+        ThreadSafeOsmIdNoExitStoreAccessor infoStore = nodeInfoStore.getThreadSafeAccessor();
+        int[] candidates = new int[Math.min(count, 1024)];
+        int size = 0;
+        int deadEndCount = 0;
+        for (int id = startId; id < startId + count; ++id) {
+            if (storage.isNodeRemoved(id)) {
+                continue;
+            }
+            int degree = 0;
+            EdgeIterator iter = explorer.setBaseNode(id);
+            while (degree < 2 && iter.next()) {
+                ++degree;
+            }
+            if (degree != 1) {
+                continue;
+            }
+            ++deadEndCount;
+            try {
+                if (infoStore.getOsmId(id) == -1 || infoStore.getNoExit(id)) {
+                    continue;
+                }
+            } catch (NullPointerException e) {
+                continue;
+            }
+            if (size == candidates.length) {
+                int[] larger = new int[2 * size];
+                System.arraycopy(candidates, 0, larger, 0, size);
+                candidates = larger;
+            }
+            candidates[size] = id;
+            ++size;
+        }
+        deadEnds.addAndGet(deadEndCount);
+        int[] result = new int[size];
+        System.arraycopy(candidates, 0, result, 0, size);
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of the detection of unconnected roads written to the output directory.
+ *
+ * A checkpoint is written only after the file of duplicated edges is complete. It records the
+ * number of candidates whose results are written to the file of missing connections and the size
+ * of this file at that point. The candidates are processed in a deterministic order, therefore a
+ * resumed run can truncate the file to this size and go on with the next candidate. The number
+ * of candidates, the size of the graph and the settings affecting the order of the candidates
+ * or the content of the output have to match.
+ */
+class DetectionCheckpoint {
+
+    private final int candidates;
+    private final int nodes;
+    private final int edges;
+    private final String settings;
+    // number of candidates whose results are written
+    private int written = 0;
+    // size of the file of missing connections after these results
+    private long bytes = 0;
+    private boolean empty = true;
+
+    DetectionCheckpoint(int candidates, int nodes, int edges, String settings) {
+        this.candidates = candidates;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.settings = settings;
+    }
+
+    /**
+     * Read a checkpoint.
+     *
+     * @return checkpoint or null if the file does not exist
+     */
+    static DetectionCheckpoint load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        }
+        try {
+            DetectionCheckpoint checkpoint = new DetectionCheckpoint(Integer.parseInt(properties.getProperty("candidates")),
+                    Integer.parseInt(properties.getProperty("nodes")), Integer.parseInt(properties.getProperty("edges")),
+                    properties.getProperty("settings"));
+            checkpoint.setProgress(Integer.parseInt(properties.getProperty("written")),
+                    Long.parseLong(properties.getProperty("bytes")), Boolean.parseBoolean(properties.getProperty("empty")));
+            return checkpoint;
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new IOException("Invalid checkpoint " + path, e);
+        }
+    }
+
+    /**
+     * Write the checkpoint. The previous checkpoint is replaced only after the new one is
+     * written completely.
+     */
+    void store(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("candidates", Integer.toString(candidates));
+        properties.setProperty("nodes", Integer.toString(nodes));
+        properties.setProperty("edges", Integer.toString(edges));
+        properties.setProperty("settings", settings);
+        properties.setProperty("written", Integer.toString(written));
+        properties.setProperty("bytes", Long.toString(bytes));
+        properties.setProperty("empty", Boolean.toString(empty));
+        Path temporary = Paths.get(path.toString() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            properties.store(out, "Progress of the detection of unconnected roads");
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Check if a run with the given state can be resumed from this checkpoint.
+     *
+     * @throws IllegalStateException if the candidates, the graph or the settings differ
+     */
+    void checkResumable(DetectionCheckpoint current) {
+        if (candidates != current.candidates || nodes != current.nodes || edges != current.edges) {
+            throw new IllegalStateException("The checkpoint was written for another graph (" + candidates + " candidates, "
+                    + nodes + " nodes, " + edges + " edges instead of " + current.candidates + ", " + current.nodes
+                    + " and " + current.edges + ").");
+        }
+        if (!settings.equals(current.settings)) {
+            throw new IllegalStateException("The checkpoint was written with other settings (" + settings + " instead of "
+                    + current.settings + ").");
+        }
+        if (written > candidates) {
+            throw new IllegalStateException("The checkpoint covers more candidates than exist.");
+        }
+    }
+
+    void setProgress(int written, long bytes, boolean empty) {
+        this.written = written;
+        this.bytes = bytes;
+        this.empty = empty;
+    }
+
+    int getWritten() {
+        return written;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.osmi_routing.flag_encoders.EdgeAttributes;
+
+/**
+ * Search for pairs of edges with the same end points and the same geometry.
+ *
+ * Each edge is visited once, from its end point with the lower node ID. Edges of a node are
+ * grouped by the key (adjacent node, distance). The geometry of an edge is only fetched if another
+ * edge has the same key. Geometries are hashed and only compared completely if the hashes are
+ * equal. Each pair is reported exactly once.
+ *
+ * The node ID range is split into blocks which are scanned in parallel. The duplicates of the
+ * blocks are concatenated in order.
+ */
+class DuplicatedEdgeFinder extends RecursiveTask<List<DuplicatedEdge>> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Blocks with less nodes are scanned by a single thread. */
+    static final int BLOCK_SIZE = 65536;
+
+    private final GraphHopperStorage storage;
+    private final EdgeAttributes edgeAttributes;
+    private final OsmIdStore wayIdStore;
+    private final int startId;
+    private final int count;
+
+    private DuplicatedEdgeFinder(GraphHopperStorage storage, EdgeAttributes edgeAttributes, OsmIdStore wayIdStore, int startId,
+            int count) {
+        this.storage = storage;
+        this.edgeAttributes = edgeAttributes;
+        this.wayIdStore = wayIdStore;
+        this.startId = startId;
+        this.count = count;
+    }
+
+    /**
+     * Get all duplicated edges ordered by the lower node ID of the edges.
+     */
+    static List<DuplicatedEdge> findDuplicates(ForkJoinPool pool, GraphHopperStorage storage, EdgeAttributes edgeAttributes,
+            OsmIdStore wayIdStore) {
+        List<DuplicatedEdge> duplicates = pool.invoke(new DuplicatedEdgeFinder(storage, edgeAttributes, wayIdStore, 0, storage.getNodes()));
+        UnconnectedFinderManager.logger.info("Found {} duplicated edges", duplicates.size());
+        return duplicates;
+    }
+
+    @Override
+    protected List<DuplicatedEdge> compute() {
+        if (count > BLOCK_SIZE) {
+            int half = count / 2;
+            DuplicatedEdgeFinder first = new DuplicatedEdgeFinder(storage, edgeAttributes, wayIdStore, startId, half);
+            DuplicatedEdgeFinder second = new DuplicatedEdgeFinder(storage, edgeAttributes, wayIdStore, startId + half, count - half);
+            second.fork();
+            List<DuplicatedEdge> duplicates = first.compute();
+            duplicates.addAll(second.join());
+            return duplicates;
+        }
+        return scan();
+    }
+
+    private List<DuplicatedEdge> scan() {
+        List<DuplicatedEdge> duplicates = new ArrayList<DuplicatedEdge>();
+        EdgeExplorer explorer = storage.createEdgeExplorer();
+        OsmIdStore.ThreadSafeOsmIdAccessor wayIdAccessor = wayIdStore.getThreadSafeAccessor();
+        IntArrayList edgeIds = new IntArrayList();
+        IntArrayList adjNodes = new IntArrayList();
+        DoubleArrayList distances = new DoubleArrayList();
+        // geometries and their hashes, only fetched for edges whose key is not unique
+        List<PointList> geometries = new ArrayList<PointList>();
+        IntArrayList hashes = new IntArrayList();
+        for (int id = startId; id < startId + count; ++id) {
+            if (storage.isNodeRemoved(id)) {
+                continue;
+            }
+            edgeIds.clear();
+            adjNodes.clear();
+            distances.clear();
+            EdgeIterator iter = explorer.setBaseNode(id);
+            while (iter.next()) {
+                int adjNode = iter.getAdjNode();
+                // Visit each edge from its end with the lower ID only. The edge explorer of
+                // GraphHopper 0.12 returns loops once, the check of the edge ID protects against
+                // explorers returning them from both ends.
+                if (adjNode < id || (adjNode == id && edgeIds.contains(iter.getEdge()))) {
+                    continue;
+                }
+                edgeIds.add(iter.getEdge());
+                adjNodes.add(adjNode);
+                distances.add(iter.getDistance());
+            }
+            if (edgeIds.size() < 2) {
+                continue;
+            }
+            geometries.clear();
+            hashes.clear();
+            for (int i = 0; i < edgeIds.size(); ++i) {
+                geometries.add(null);
+                hashes.add(0);
+            }
+            for (int i = 0; i < edgeIds.size() - 1; ++i) {
+                for (int j = i + 1; j < edgeIds.size(); ++j) {
+                    if (adjNodes.get(i) != adjNodes.get(j) || distances.get(i) != distances.get(j)) {
+                        continue;
+                    }
+                    PointList points1 = getGeometry(i, edgeIds, adjNodes, geometries, hashes);
+                    PointList points2 = getGeometry(j, edgeIds, adjNodes, geometries, hashes);
+                    if (hashes.get(i) == hashes.get(j) && points1.equals(points2)) {
+                        EdgeIteratorState edge1 = storage.getEdgeIteratorState(edgeIds.get(i), adjNodes.get(i));
+                        EdgeIteratorState edge2 = storage.getEdgeIteratorState(edgeIds.get(j), adjNodes.get(j));
+                        long wayId1 = wayIdAccessor.getOsmId(edge1.getEdge());
+                        long wayId2 = wayIdAccessor.getOsmId(edge2.getEdge());
+                        boolean areaInvolved = edgeAttributes.isArea(edge1) || edgeAttributes.isArea(edge2);
+                        duplicates.add(new DuplicatedEdge(points1, wayId1, wayId2, areaInvolved));
+                        break;
+                    }
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    private PointList getGeometry(int index, IntArrayList edgeIds, IntArrayList adjNodes, List<PointList> geometries,
+            IntArrayList hashes) {
+        PointList geometry = geometries.get(index);
+        if (geometry == null) {
+            geometry = storage.getEdgeIteratorState(edgeIds.get(index), adjNodes.get(index)).fetchWayGeometry(3);
+            geometries.set(index, geometry);
+            hashes.set(index, geometry.hashCode());
+        }
+        return geometry;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fork/join task searching a range of node IDs for missing connections.
+ *
+ * Ranges are split in halves as long as their estimated cost is above a target or other workers
+ * run out of work. The estimate is based on the measured time per node of the ranges processed so
+ * far. The halves are forked, idle workers of the pool steal them. The results of both halves are
+ * concatenated in order, therefore the output of a range is independent of how it was split.
+ *
+ * Only ranges which are not split use the per-thread worker state. They never wait for other
+ * tasks, therefore a worker cannot start another search while its state is in use.
+ */
+class FinderTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Ranges with less nodes are not split any further. */
+    static final int MIN_RANGE_SIZE = 64;
+    /** Size of the ranges before any cost has been measured. */
+    static final int INITIAL_RANGE_SIZE = 1000;
+    /** Default target duration of the search of a range which is not split. */
+    static final long TARGET_NANOS = 5000000;
+
+    /**
+     * Cost measurements shared by all tasks of a run.
+     */
+    static class CostModel {
+        private final AtomicLong nanos = new AtomicLong();
+        private final AtomicLong nodes = new AtomicLong();
+        // target duration of the search of a range which is not split
+        private volatile long targetNanos;
+
+        CostModel(long targetNanos) {
+            this.targetNanos = targetNanos;
+        }
+
+        void setTargetNanos(long targetNanos) {
+            this.targetNanos = targetNanos;
+        }
+
+        /**
+         * Get the number of nodes of all ranges searched so far.
+         */
+        long getNodes() {
+            return nodes.get();
+        }
+
+        /**
+         * Get the average number of nodes of a range which is not split.
+         */
+        long getTargetRangeSize() {
+            long measuredNanos = nanos.get();
+            if (measuredNanos == 0) {
+                return INITIAL_RANGE_SIZE;
+            }
+            return Math.max(MIN_RANGE_SIZE, Math.round(targetNanos * (double) nodes.get() / measuredNanos));
+        }
+
+        void record(int nodeCount, long duration) {
+            nanos.addAndGet(duration);
+            nodes.addAndGet(nodeCount);
+        }
+
+        boolean shouldSplit(int nodeCount) {
+            if (nodeCount < 2 * MIN_RANGE_SIZE) {
+                return false;
+            }
+            long measuredNodes = nodes.get();
+            if (measuredNodes == 0) {
+                return nodeCount > INITIAL_RANGE_SIZE;
+            }
+            return nodeCount * (double) nanos.get() / measuredNodes > targetNanos;
+        }
+    }
+
+    private final UnconnectedFinderManager manager;
+    private final CostModel costModel;
+    private final int startId;
+    private final int count;
+    // result of the top level task, null for forked subtasks
+    private final MissingConnectionResult result;
+    private List<MissingConnection> missingConnections;
+
+    FinderTask(UnconnectedFinderManager manager, CostModel costModel, int startId, int count, MissingConnectionResult result) {
+        this.manager = manager;
+        this.costModel = costModel;
+        this.startId = startId;
+        this.count = count;
+        this.result = result;
+    }
+
+    @Override
+    protected void compute() {
+        if (result == null) {
+            computeRange();
+            return;
+        }
+        try {
+            computeRange();
+            result.storeSuccessResult(missingConnections);
+        } catch (RuntimeException e) {
+            UnconnectedFinderManager.logger.catching(e);
+            result.storeFailureResult(e);
+        }
+    }
+
+    /**
+     * Split if the range is expensive or if the queue of this worker is empty while other workers
+     * might be idle.
+     */
+    private boolean shouldSplit() {
+        if (count < 2 * MIN_RANGE_SIZE) {
+            return false;
+        }
+        return costModel.shouldSplit(count) || getSurplusQueuedTaskCount() <= 0;
+    }
+
+    private void computeRange() {
+        if (shouldSplit()) {
+            int half = count / 2;
+            FinderTask first = new FinderTask(manager, costModel, startId, half, null);
+            FinderTask second = new FinderTask(manager, costModel, startId + half, count - half, null);
+            invokeAll(first, second);
+            missingConnections = first.missingConnections;
+            missingConnections.addAll(second.missingConnections);
+            return;
+        }
+        long start = System.nanoTime();
+        OutputListener listener = new OutputListener() {
+            @Override
+            public void error(Exception ex) {
+                throw new RuntimeException("Search for missing connections failed for nodes " + startId + " to "
+                        + (startId + count - 1), ex);
+            }
+
+            @Override
+            public void complete(List<MissingConnection> results) {
+                missingConnections = results;
+            }
+        };
+        manager.createFinder(listener, startId, count).run();
+        costModel.record(count, System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeExplorer;
+
+import de.geofabrik.osmi_routing.algorithm.DijkstraWithLimits;
+import de.geofabrik.osmi_routing.index.ConstrainedLocationIndex;
+
+/**
+ * State of a worker thread which is reused by all chunks of nodes the thread processes.
+ *
+ * Besides the routing state, it holds the edge explorers and primitive lists used by the checks
+ * of a single node. Reusing them keeps the check of a node free of allocations in most cases.
+ */
+public class FinderWorkerState {
+
+    private final DijkstraWithLimits dijkstra;
+    private final SearchStatistics statistics;
+    private final AdaptiveNodeLimit nodeLimit;
+    private final EdgeExplorer nodeExplorer;
+    private final EdgeExplorer neighbourExplorer;
+    private final ConstrainedLocationIndex.Query locationQuery;
+    private final IntArrayList adjNodes = new IntArrayList();
+    private final IntArrayList neighbours = new IntArrayList();
+    private long allocatedBytes = 0;
+    private long processedNodes = 0;
+    // number of location index queries per radius they stopped at, the last entry counts queries without result
+    private final long[] radiusSteps;
+
+    /**
+     * @param nodeLimit adaptive node limit or null if the node limit is fixed
+     * @param radiusCount number of radii of location index queries with escalating radii, 0 if disabled
+     */
+    public FinderWorkerState(GraphHopperStorage storage, ConstrainedLocationIndex index, DijkstraWithLimits dijkstra,
+            AdaptiveNodeLimit nodeLimit, int radiusCount) {
+        this.dijkstra = dijkstra;
+        this.statistics = new SearchStatistics();
+        this.nodeLimit = nodeLimit;
+        this.nodeExplorer = storage.createEdgeExplorer();
+        this.neighbourExplorer = storage.createEdgeExplorer();
+        // The query shares the edge geometry cache with the routing.
+        this.locationQuery = index.createQuery(dijkstra.getEdgeDistanceCache());
+        this.radiusSteps = new long[radiusCount + 1];
+    }
+
+    /**
+     * Get the number of bytes allocated by the current thread so far.
+     *
+     * @return number of bytes or -1 if the JVM does not support measuring it
+     */
+    public static long currentThreadAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Explorer for the edges of the node being checked.
+     */
+    public EdgeExplorer getNodeExplorer() {
+        return nodeExplorer;
+    }
+
+    /**
+     * Explorer for the edges of neighbouring nodes.
+     */
+    public EdgeExplorer getNeighbourExplorer() {
+        return neighbourExplorer;
+    }
+
+    public ConstrainedLocationIndex.Query getLocationQuery() {
+        return locationQuery;
+    }
+
+    public IntArrayList getAdjNodes() {
+        return adjNodes;
+    }
+
+    public IntArrayList getNeighbours() {
+        return neighbours;
+    }
+
+    /**
+     * Add the bytes allocated while processing a number of nodes.
+     */
+    public void recordAllocation(long bytes, int nodes) {
+        allocatedBytes += bytes;
+        processedNodes += nodes;
+    }
+
+    /**
+     * Count a location index query with escalating radii.
+     *
+     * @param step index of the radius the query stopped at, number of radii if nothing was found
+     */
+    public void recordRadiusStep(int step) {
+        ++radiusSteps[step];
+    }
+
+    /**
+     * Forget the statistics and counters recorded so far.
+     */
+    public void resetStatistics() {
+        statistics.clear();
+        Arrays.fill(radiusSteps, 0);
+        allocatedBytes = 0;
+        processedNodes = 0;
+    }
+
+    public long[] getRadiusSteps() {
+        return radiusSteps;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getProcessedNodes() {
+        return processedNodes;
+    }
+
+    public DijkstraWithLimits getDijkstra() {
+        return dijkstra;
+    }
+
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return adaptive node limit or null if the node limit is fixed
+     */
+    public AdaptiveNodeLimit getNodeLimit() {
+        return nodeLimit;
+    }
+}
@@ -20,9 +20,11 @@ package de.geofabrik.osmi_routing;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.List;
@@ -35,6 +37,7 @@ import com.graphhopper.util.shapes.GHPoint;
 import de.geofabrik.osmi_routing.subnetworks.RemoveAndDumpSubnetworks;
 
 public class GeoJSONWriter {
+    private final Path path;
     private BufferedWriter writer;
     private DecimalFormatSymbols decimalFormatSymbols;
     private DecimalFormat df1;
@@ -43,9 +46,35 @@ public class GeoJSONWriter {
     boolean firstFeature = true;
 
     public GeoJSONWriter(Path path) throws IOException {
+        this.path = path;
         this.writer = Files.newBufferedWriter(path, Charset.forName("UTF-8"));
         String header = "{\"type\":\"FeatureCollection\",\n\"features\":[\n";
         this.writer.write(header);
+        initFormats();
+    }
+
+    /**
+     * Continue writing a file which was written up to a given size before. Everything after
+     * this position is removed.
+     *
+     * @param size size of the file in bytes at a position between two features
+     * @param empty true if no feature has been written before this position
+     */
+    public GeoJSONWriter(Path path, long size, boolean empty) throws IOException {
+        this.path = path;
+        if (Files.size(path) < size) {
+            throw new IOException(path + " is shorter than " + size + " bytes.");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+        this.writer = Files.newBufferedWriter(path, Charset.forName("UTF-8"), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.firstFeature = empty;
+        initFormats();
+    }
+
+    private void initFormats() {
         decimalFormatSymbols = new DecimalFormatSymbols(new Locale("en-US"));
         df1 = new DecimalFormat("#.#", decimalFormatSymbols);
         df2 = new DecimalFormat("#.##", decimalFormatSymbols);
@@ -155,6 +184,21 @@ public class GeoJSONWriter {
         writer.flush();
     }
 
+    /**
+     * Flush the output and get the size of the file.
+     */
+    public long getFileSize() throws IOException {
+        flush();
+        return Files.size(path);
+    }
+
+    /**
+     * Check if no feature has been written so far.
+     */
+    public boolean isEmpty() {
+        return firstFeature;
+    }
+
     public void close() throws IOException {
         writer.write("]}\n");
         flush();
@@ -37,11 +37,20 @@ import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.GHDirectory;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.util.Helper;
 
+import de.geofabrik.osmi_routing.algorithm.CHDistanceOracle;
+import de.geofabrik.osmi_routing.algorithm.EdgeOrientationStore;
+import de.geofabrik.osmi_routing.algorithm.LandmarkStore;
 import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
 import de.geofabrik.osmi_routing.flag_encoders.SimpleBikeFlagEncoder;
+import de.geofabrik.osmi_routing.index.ConstrainedLocationIndex;
 import de.geofabrik.osmi_routing.reader.BarriersHook;
 import de.geofabrik.osmi_routing.reader.NoExitHook;
 import de.geofabrik.osmi_routing.subnetworks.RemoveAndDumpSubnetworks;
@@ -58,18 +67,31 @@ public class GraphHopperSimple extends GraphHopperOSM {
     private OsmIdStore edgeMapping;
     String outputDirectory;
     UnconnectedFinderManager unconnectedFinderManager;
+    // default settings of the location index of GraphHopper
+    private static final int INDEX_RESOLUTION = 300;
+    private static final int INDEX_MAX_REGION_SEARCH = 4;
     boolean doRouting;
+    boolean goalDirected;
+    int landmarkCount;
+    boolean useCH;
+    double maxDistance;
 
     public GraphHopperSimple(Namespace args) throws IOException {
         super();
+        // The node info is stored in the graph directory, the location has to be set first.
+        setGraphHopperLocation(args.getString("graph_directory"));
         nodeInfoStore = new OsmIdAndNoExitStore(getGraphHopperLocation());
         hook = new NoExitHook(nodeInfoStore);
         barriersHook = new BarriersHook();
         setDataReaderFile(args.getString("input_file"));
-        setGraphHopperLocation(args.getString("graph_directory"));
         doRouting = args.getBoolean("do_routing");
-        setCHEnabled(false);
+        goalDirected = doRouting && args.getBoolean("goal_directed");
+        landmarkCount = args.getInt("landmarks");
+        useCH = doRouting && args.getBoolean("contraction_hierarchies");
+        // A contraction hierarchy is prepared for the all_roads encoder only (see below).
+        setCHEnabled(useCH);
         // Disable sorting of graph because that would overwrite the values stored in the additional properties field of the graph.
+        // The contraction hierarchy does not need it and keeps the node and edge IDs of the base graph.
         setSortGraph(false);
         AllRoadsFlagEncoder encoder = new AllRoadsFlagEncoder();
         CarFlagEncoder carEncoder = new CarFlagEncoder(2, 50, 1);
@@ -84,14 +106,42 @@ public class GraphHopperSimple extends GraphHopperOSM {
         EncodingManager.Builder emBuilder = EncodingManager.createBuilder(encoders, 4);
         emBuilder.setEnableInstructions(false);
         setEncodingManager(emBuilder.build());
-        double maxDistance = args.getDouble("radius");
+        if (useCH) {
+            // The weighting has to be set before the graph is created or loaded. Otherwise a
+            // contraction hierarchy would be prepared for every encoder.
+            getCHFactoryDecorator().addNodeBasedWeighting(new ShortestWeighting(encoder));
+        }
+        maxDistance = args.getDouble("radius");
         int workers = args.getInt("worker_threads");
+        // The tile join does not support auto tuning.
+        boolean autoTune = args.getBoolean("auto_tune") && !args.getBoolean("tile_join");
+        if (args.getBoolean("auto_tune") && !autoTune) {
+            logger.warn("--auto-tune is ignored with --tile-join, using " + workers + " worker threads");
+        }
+        if (autoTune) {
+            // The tuning starts with all processors and reduces the number of workers if that is faster.
+            workers = Runtime.getRuntime().availableProcessors();
+        }
         try {
             unconnectedFinderManager = new UnconnectedFinderManager(this, encoder, outputDirectory, maxDistance, workers);
+            unconnectedFinderManager.setGoalDirected(goalDirected);
+            unconnectedFinderManager.setAdaptiveNodeLimit(doRouting && args.getBoolean("adaptive_node_limit"));
+            unconnectedFinderManager.setHilbertOrder(args.getBoolean("hilbert_order"));
+            unconnectedFinderManager.setRadiusEscalation(args.getBoolean("radius_escalation"));
+            unconnectedFinderManager.setTileJoin(args.getBoolean("tile_join"));
+            unconnectedFinderManager.setPackEdgeAttributes(args.getBoolean("pack_edge_attributes"));
+            unconnectedFinderManager.setChunkTime(args.getDouble("chunk_time"));
+            unconnectedFinderManager.setAutoTune(autoTune);
+            unconnectedFinderManager.setResume(args.getBoolean("resume"));
         } catch (IOException e) {
             logger.fatal(e);
             e.printStackTrace();
         }
+        // An invalid rules file aborts the program.
+        String priorityRules = args.getString("priorities");
+        if (priorityRules != null) {
+            unconnectedFinderManager.initPriorities(Paths.get(priorityRules));
+        }
     }
 
     /**
@@ -134,12 +184,105 @@ public class GraphHopperSimple extends GraphHopperOSM {
         return initDataReader(reader);
     }
 
+    /**
+     * Create a location index which supports queries with a predicate. It is configured like the
+     * index created by the GraphHopper class.
+     */
+    @Override
+    protected LocationIndex createLocationIndex(Directory dir) {
+        ConstrainedLocationIndex index = new ConstrainedLocationIndex(getGraphHopperStorage(), dir);
+        index.setResolution(INDEX_RESOLUTION);
+        index.setMaxRegionSearch(INDEX_MAX_REGION_SEARCH);
+        if (!index.loadExisting()) {
+            ensureWriteAccess();
+            index.prepareIndex();
+        }
+        return index;
+    }
+
+    /**
+     * Load landmark distances from the graph directory or calculate and store them.
+     *
+     * @return landmark distances or null if no landmarks are requested
+     */
+    private LandmarkStore loadOrPrepareLandmarks() {
+        if (!goalDirected || landmarkCount <= 0) {
+            return null;
+        }
+        GHDirectory dir = new GHDirectory(getGraphHopperLocation(), DAType.RAM_STORE);
+        LandmarkStore landmarks = new LandmarkStore(dir, "landmarks_all_roads");
+        if (landmarks.loadExisting(getGraphHopperStorage(), landmarkCount)) {
+            logger.info("Loaded distances of " + landmarkCount + " landmarks");
+            return landmarks;
+        }
+        landmarks.prepare(getGraphHopperStorage(), landmarkCount);
+        landmarks.flush();
+        return landmarks;
+    }
+
+    /**
+     * Load orientations of the edges at their tower nodes from the graph directory or calculate
+     * and store them.
+     */
+    private EdgeOrientationStore loadOrPrepareOrientations() {
+        GHDirectory dir = new GHDirectory(getGraphHopperLocation(), DAType.RAM_STORE);
+        EdgeOrientationStore orientations = new EdgeOrientationStore(dir, "edge_orientations");
+        if (orientations.loadExisting(getGraphHopperStorage())) {
+            logger.info("Loaded edge orientations");
+            return orientations;
+        }
+        orientations.prepare(getGraphHopperStorage());
+        orientations.flush();
+        return orientations;
+    }
+
+    /**
+     * Write the data collected by the reader hooks during the import to the graph directory.
+     */
+    private void storeImportData() {
+        nodeInfoStore.flush();
+        edgeMapping.flush();
+        barriersHook.store(new GHDirectory(getGraphHopperLocation(), DAType.RAM_STORE), "barriers");
+    }
+
+    /**
+     * Load the data collected by the reader hooks if the graph was loaded instead of imported.
+     */
+    private void loadImportData() {
+        edgeMapping = new OsmIdStore(getGraphHopperLocation());
+        if (!nodeInfoStore.loadExisting() || !edgeMapping.loadExisting()
+                || !barriersHook.loadExisting(new GHDirectory(getGraphHopperLocation(), DAType.RAM_STORE), "barriers")) {
+            throw new IllegalStateException("The graph directory " + getGraphHopperLocation()
+                    + " does not contain the OSM IDs and barriers of the graph. Delete it to import the data again.");
+        }
+        logger.info("Loaded OSM IDs and barriers from the graph directory");
+    }
+
     public void run() {
         importOrLoad();
         hook.releaseNoExitSet();
+        // The reader is created only if the data is imported.
+        boolean imported = edgeMapping != null;
+        if (!imported) {
+            loadImportData();
+        }
         barriersHook.prepareForQuery();
-        unconnectedFinderManager.init(getGraphHopperStorage(), nodeInfoStore, edgeMapping, barriersHook, doRouting);
+        if (imported) {
+            storeImportData();
+        }
+        LandmarkStore landmarks = loadOrPrepareLandmarks();
+        EdgeOrientationStore orientations = loadOrPrepareOrientations();
+        CHDistanceOracle chOracle = null;
+        if (useCH) {
+            chOracle = new CHDistanceOracle(getGraphHopperStorage(), getCHFactoryDecorator().getPreparations().get(0), maxDistance);
+        }
+        unconnectedFinderManager.init(getGraphHopperStorage(), nodeInfoStore, edgeMapping, barriersHook, doRouting, landmarks, chOracle,
+                orientations);
         unconnectedFinderManager.run();
+        if (landmarks != null) {
+            landmarks.close();
+        }
+        orientations.close();
         close();
     }
 }
@@ -24,36 +24,62 @@
 package de.geofabrik.osmi_routing;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
+/**
+ * Result of one chunk of nodes.
+ *
+ * A worker stores the result exactly once. The latch makes the stored fields visible to the
+ * thread waiting for the result without any further locking.
+ */
 public class MissingConnectionResult {
     
     private List<MissingConnection> missingConnections;
-    private List<DuplicatedEdge> duplicatedEdges;
-    private boolean complete;
+    private final CountDownLatch completion;
     private boolean success;
     private Exception ex;
+    // position in the order of the candidates after the last candidate of the chunk
+    private final int end;
 
-    public MissingConnectionResult() {
-        complete = false;
+    /**
+     * @param end position in the order of the candidates after the last candidate of the chunk
+     */
+    public MissingConnectionResult(int end) {
+        this.end = end;
+        completion = new CountDownLatch(1);
         success = false;
         ex = new RuntimeException("no success result stored");
     }
 
-    public void storeSuccessResult(List<MissingConnection> foundUnconnected, List<DuplicatedEdge> foundDuplicates) {
+    public void storeSuccessResult(List<MissingConnection> foundUnconnected) {
         missingConnections = foundUnconnected;
-        duplicatedEdges = foundDuplicates;
-        complete = true;
         success = true;
+        completion.countDown();
     }
 
     public void storeFailureResult(Exception ex) {
-        complete = true;
         success = false;
         this.ex = ex;
+        completion.countDown();
     }
 
     public boolean isComplete() {
-        return complete;
+        return completion.getCount() == 0;
+    }
+
+    /**
+     * Block until a result has been stored.
+     */
+    public void awaitCompletion() {
+        try {
+            completion.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Thread was interrupted.", e);
+        }
+    }
+
+    public int getEnd() {
+        return end;
     }
 
     public boolean isSuccess() {
@@ -67,8 +93,4 @@ public class MissingConnectionResult {
     public List<MissingConnection> getMissingConnections() {
         return missingConnections;
     }
-
-    public List<DuplicatedEdge> getDuplicates() {
-        return duplicatedEdges;
-    }
 }
@@ -35,13 +35,14 @@ public class OsmIdAndNoExitStore {
     private DataAccess nodesInfo;
     private int entryBytes = 8;
     protected int entriesCount;
+    // The data access is created when the first entry is added or loaded from disk.
+    private boolean created = false;
     protected ByteBuffer inputByteBuffer;
 
     public OsmIdAndNoExitStore(String location, String fileName) {
         this.entriesCount = 0;
-        GHDirectory dir = new GHDirectory(location, DAType.RAM);
-        this.nodesInfo = dir.find(fileName, DAType.RAM);
-        this.nodesInfo.create(100000);
+        GHDirectory dir = new GHDirectory(location, DAType.RAM_STORE);
+        this.nodesInfo = dir.find(fileName, DAType.RAM_STORE);
         this.inputByteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
         if (entriesCount > 0)
             throw new AssertionError("The nodes info storage must be initialized only once.");
@@ -59,7 +60,43 @@ public class OsmIdAndNoExitStore {
         nodesInfo.close();
     }
 
+    /**
+     * Write the entries to the directory of the store.
+     */
+    public void flush() {
+        if (!created) {
+            create();
+        }
+        nodesInfo.setHeader(0, entriesCount);
+        nodesInfo.flush();
+    }
+
+    /**
+     * Load the entries written by {@link #flush()}.
+     *
+     * @return false if there is no file
+     */
+    public boolean loadExisting() {
+        if (created) {
+            throw new IllegalStateException("The store contains entries already.");
+        }
+        if (!nodesInfo.loadExisting()) {
+            return false;
+        }
+        created = true;
+        entriesCount = nodesInfo.getHeader(0);
+        return true;
+    }
+
+    private void create() {
+        nodesInfo.create(100000);
+        created = true;
+    }
+
     protected void ensureCapacity(int nodeIndex) {
+        if (!created) {
+            create();
+        }
         nodesInfo.ensureCapacity(((long) nodeIndex + 1) * entryBytes);
         // intialize with NO_ENTRY value
         for (int i = entriesCount; i <= nodeIndex; ++i) {
@@ -87,16 +124,13 @@ public class OsmIdAndNoExitStore {
     }
 
     protected long getLong(int nodeId, ByteBuffer buffer) {
-        byte[] bytes = new byte[BUFFER_SIZE];
-        nodesInfo.getBytes((long) nodeId  * entryBytes, bytes, BUFFER_SIZE);
+        // Read directly into the backing array of the buffer to avoid allocating a byte array per call.
+        nodesInfo.getBytes((long) nodeId  * entryBytes, buffer.array(), BUFFER_SIZE);
         // Casting to java.nio.Buffer is necessary because ByteBuffer.clear and .flip are have covariant return types
         // compared to their parent class since Java 9. This is incompatible to Java 8.
         // https://jira.mongodb.org/browse/JAVA-2559
         ((Buffer) buffer).clear();
-        buffer.put(bytes);
-        ((Buffer) buffer).flip();
-        long result = buffer.getLong();
-        return result;
+        return buffer.getLong();
     }
 
     /**
@@ -51,10 +51,47 @@ public class OsmiRoutingMain {
                 .type(Double.class)
                 .setDefault(15.0)
                 .help("search radius for missing connections");
+        parser.addArgument("-c", "--contraction-hierarchies")
+                .action(Arguments.storeTrue())
+                .help("prepare a contraction hierarchy and use it for routing (requires --do-routing, recommended for large radii)");
+        parser.addArgument("-g", "--goal-directed")
+                .action(Arguments.storeTrue())
+                .help("skip nodes of routing requests which cannot be part of a path within the radius (requires --do-routing, requests which reached the node limit before may find a path now)");
+        parser.addArgument("-l", "--landmarks")
+                .type(Integer.class)
+                .setDefault(0)
+                .help("number of landmarks to speed up routing (requires --goal-directed, distances are stored in the graph directory, 0 disables landmarks)");
+        parser.addArgument("-a", "--adaptive-node-limit")
+                .action(Arguments.storeTrue())
+                .help("lower the node limit of routing requests per road class based on the search space of successful requests of a fixed sample of candidates (requires --do-routing)");
+        parser.addArgument("-s", "--hilbert-order")
+                .action(Arguments.storeTrue())
+                .help("process nodes in the order of a Hilbert curve for better cache locality on large graphs (changes the order of the output)");
+        parser.addArgument("-e", "--radius-escalation")
+                .action(Arguments.storeTrue())
+                .help("search missing connections within an eighth of the radius first and double it until a candidate is found (same output, faster in dense areas)");
+        parser.addArgument("-j", "--tile-join")
+                .action(Arguments.storeTrue())
+                .help("match dead ends and edges tile by tile instead of one location index lookup per dead end (recommended for large extracts, the output is written in the order of the tiles)");
+        parser.addArgument("-p", "--pack-edge-attributes")
+                .action(Arguments.storeTrue())
+                .help("decode road class, access, area and level of all edges once into arrays before the detection (2 bytes per edge)");
+        parser.addArgument("--priorities")
+                .help("properties file with priority rules by road class, overrides the defaults entry by entry");
         parser.addArgument("-w", "--worker-threads")
                 .type(Integer.class)
                 .setDefault(2)
                 .help("number of worker threads to search missing connections");
+        parser.addArgument("-t", "--auto-tune")
+                .action(Arguments.storeTrue())
+                .help("measure the throughput during the first minutes and choose the number of worker threads (up to the number of processors) and the chunk time, the chosen values are logged (ignored with --tile-join, --worker-threads applies then)");
+        parser.addArgument("--chunk-time")
+                .type(Double.class)
+                .setDefault(5.0)
+                .help("target duration in milliseconds of the search of a chunk of nodes, determines the chunk size");
+        parser.addArgument("--resume")
+                .action(Arguments.storeTrue())
+                .help("continue the detection of unconnected roads of an interrupted run from the checkpoint in the output directory (requires the same graph directory and settings)");
         parser.addArgument("input_file").help("input file");
         parser.addArgument("graph_directory").help("directory where to store graph");
         parser.addArgument("output_directory").help("output directory");
@@ -0,0 +1,183 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+/**
+ * Priorities of missing connections by road class, distance and access.
+ *
+ * The rules are read from a properties file. Keys are the names of the road classes, values are
+ * the priorities for the four distance classes (quarters of the search radius) separated by
+ * commas. The key {@code unimportant} lists the road classes which do not get the highest
+ * priorities for very short distances. The defaults are read from {@code priorities.properties}
+ * on the class path, a file given by the user overrides single entries.
+ *
+ * The rules are compiled into a lookup table when the instance is created. The table already
+ * contains all adjustments for short distances and private access.
+ */
+public class PriorityTable {
+
+    public static final String DEFAULT_RESOURCE = "/priorities.properties";
+    public static final int DISTANCE_CLASSES = 4;
+    private static final String UNIMPORTANT_KEY = "unimportant";
+    // distances below 1 m, below 2 m and longer
+    private static final int SHORT_DISTANCE_CLASSES = 3;
+
+    private final double categoryWidth;
+    private final byte[] table;
+
+    /**
+     * @param rules rules in the format described above
+     * @param maxDistance search radius
+     */
+    public PriorityTable(Properties rules, double maxDistance) {
+        this.categoryWidth = maxDistance / DISTANCE_CLASSES;
+        RoadClass[] roadClasses = RoadClass.values();
+        int[][] basePriorities = new int[roadClasses.length][DISTANCE_CLASSES];
+        boolean[] unimportant = new boolean[roadClasses.length];
+        for (String key : rules.stringPropertyNames()) {
+            String value = rules.getProperty(key).trim();
+            if (key.equals(UNIMPORTANT_KEY)) {
+                for (String name : value.split(",")) {
+                    if (!name.trim().isEmpty()) {
+                        unimportant[parseRoadClass(name.trim()).ordinal()] = true;
+                    }
+                }
+                continue;
+            }
+            basePriorities[parseRoadClass(key).ordinal()] = parsePriorities(key, value);
+        }
+        table = new byte[roadClasses.length * DISTANCE_CLASSES * SHORT_DISTANCE_CLASSES * 2];
+        for (RoadClass roadClass : roadClasses) {
+            for (int distanceClass = 0; distanceClass < DISTANCE_CLASSES; ++distanceClass) {
+                for (int shortClass = 0; shortClass < SHORT_DISTANCE_CLASSES; ++shortClass) {
+                    int priority = compile(basePriorities[roadClass.ordinal()][distanceClass], shortClass,
+                            unimportant[roadClass.ordinal()]);
+                    table[index(roadClass.ordinal(), distanceClass, shortClass, false)] = (byte) priority;
+                    table[index(roadClass.ordinal(), distanceClass, shortClass, true)] = (byte) (priority + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the default rules and override them by the rules of a file.
+     *
+     * @param path file with rules or null to use the defaults only
+     */
+    public static Properties loadRules(Path path) throws IOException {
+        Properties rules = new Properties();
+        try (InputStream in = PriorityTable.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Default priorities " + DEFAULT_RESOURCE + " not found on the class path");
+            }
+            rules.load(in);
+        }
+        if (path != null) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                rules.load(reader);
+            }
+        }
+        return rules;
+    }
+
+    private static RoadClass parseRoadClass(String name) {
+        for (RoadClass roadClass : RoadClass.values()) {
+            if (name.equals(roadClass.toString())) {
+                return roadClass;
+            }
+        }
+        throw new IllegalArgumentException("Unknown road class in priority rules: " + name);
+    }
+
+    private static int[] parsePriorities(String key, String value) {
+        String[] parts = value.split(",");
+        if (parts.length != DISTANCE_CLASSES) {
+            throw new IllegalArgumentException("Priority rule for " + key + " needs " + DISTANCE_CLASSES
+                    + " values separated by commas: " + value);
+        }
+        int[] priorities = new int[DISTANCE_CLASSES];
+        for (int i = 0; i < DISTANCE_CLASSES; ++i) {
+            try {
+                priorities[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid priority for " + key + ": " + parts[i]);
+            }
+            if (priorities[i] < 0 || priorities[i] > Byte.MAX_VALUE - 2) {
+                throw new IllegalArgumentException("Priority for " + key + " out of range: " + priorities[i]);
+            }
+        }
+        return priorities;
+    }
+
+    /**
+     * Apply the adjustments for short distances to a priority of the rules.
+     */
+    private static int compile(int priority, int shortClass, boolean unimportant) {
+        // Some minor road classes should not pop up in our most important category because they
+        // lead to many false positives.
+        if (priority > 0 && shortClass == 0 && !unimportant) {
+            return 1;
+        } else if (priority > 0 && shortClass < 2 && !unimportant) {
+            return 2;
+        } else if (priority > 0 && shortClass < 2 && unimportant) {
+            return Math.max(2, priority - 1);
+        }
+        return priority;
+    }
+
+    private static int index(int roadClass, int distanceClass, int shortClass, boolean isPrivate) {
+        return ((roadClass * DISTANCE_CLASSES + distanceClass) * SHORT_DISTANCE_CLASSES + shortClass) * 2
+                + (isPrivate ? 1 : 0);
+    }
+
+    /**
+     * Get the priority of a missing connection.
+     *
+     * @param distance distance between the open end and the matched location
+     * @return priority, 0 if the road class is not reported
+     */
+    public int getPriority(RoadClass roadClass, boolean isPrivate, double distance) {
+        if (distance == 0) {
+            // Two nodes at the same location is always an error of highest priority.
+            return 1;
+        }
+        int distanceClass = Math.min(DISTANCE_CLASSES - 1, (int) (distance / categoryWidth));
+        int shortClass = distance < 1.0 ? 0 : (distance < 2.0 ? 1 : 2);
+        return table[index(roadClass.ordinal(), distanceClass, shortClass, isPrivate)];
+    }
+
+    /**
+     * Get a hash of the compiled table. Rules which result in the same priorities have the same
+     * hash.
+     */
+    public String getHash() {
+        return Integer.toHexString(Arrays.hashCode(table));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.Logger;
+
+import de.geofabrik.osmi_routing.algorithm.DijkstraWithLimits;
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+/**
+ * Histograms of the search space and outcome of routing requests, broken down by road class.
+ *
+ * Histograms have logarithmic buckets: bucket 0 counts the value 0, bucket i counts values from
+ * 2^(i-1) to 2^i - 1.
+ *
+ * Recording is not thread-safe. Use one instance per worker thread and merge them at the end.
+ */
+public class SearchStatistics {
+
+    static final int BUCKETS = 32;
+
+    private final long[][] settledNodes;
+    private final long[][] relaxedEdges;
+    private final long[][] microseconds;
+    private final long[][] statusCounts;
+    private final long[] totalNanos;
+
+    public SearchStatistics() {
+        int classes = RoadClass.values().length;
+        settledNodes = new long[classes][BUCKETS];
+        relaxedEdges = new long[classes][BUCKETS];
+        microseconds = new long[classes][BUCKETS];
+        statusCounts = new long[classes][DijkstraWithLimits.Status.values().length];
+        totalNanos = new long[classes];
+    }
+
+    static int bucket(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+    public void record(RoadClass roadClass, DijkstraWithLimits.Status status, int settled, int relaxed, long nanos) {
+        int c = roadClass.ordinal();
+        ++settledNodes[c][bucket(settled)];
+        ++relaxedEdges[c][bucket(relaxed)];
+        ++microseconds[c][bucket(nanos / 1000)];
+        ++statusCounts[c][status.ordinal()];
+        totalNanos[c] += nanos;
+    }
+
+    public long getCount(RoadClass roadClass, DijkstraWithLimits.Status status) {
+        return statusCounts[roadClass.ordinal()][status.ordinal()];
+    }
+
+    public long getSettledNodesBucket(RoadClass roadClass, int bucket) {
+        return settledNodes[roadClass.ordinal()][bucket];
+    }
+
+    /**
+     * Add the numbers of another instance to this one.
+     */
+    public void merge(SearchStatistics other) {
+        for (int c = 0; c < totalNanos.length; ++c) {
+            for (int b = 0; b < BUCKETS; ++b) {
+                settledNodes[c][b] += other.settledNodes[c][b];
+                relaxedEdges[c][b] += other.relaxedEdges[c][b];
+                microseconds[c][b] += other.microseconds[c][b];
+            }
+            for (int s = 0; s < statusCounts[c].length; ++s) {
+                statusCounts[c][s] += other.statusCounts[c][s];
+            }
+            totalNanos[c] += other.totalNanos[c];
+        }
+    }
+
+    /**
+     * Forget all recorded searches.
+     */
+    public void clear() {
+        for (int c = 0; c < totalNanos.length; ++c) {
+            Arrays.fill(settledNodes[c], 0);
+            Arrays.fill(relaxedEdges[c], 0);
+            Arrays.fill(microseconds[c], 0);
+            Arrays.fill(statusCounts[c], 0);
+        }
+        Arrays.fill(totalNanos, 0);
+    }
+
+    private static String histogramToString(long[] histogram) {
+        int last = 0;
+        for (int b = 0; b < histogram.length; ++b) {
+            if (histogram[b] > 0) {
+                last = b;
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int b = 0; b <= last; ++b) {
+            if (b > 0) {
+                builder.append(' ');
+            }
+            builder.append(b == 0 ? 0 : (1L << (b - 1))).append(':').append(histogram[b]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the statistics of all road classes with at least one search to the log.
+     */
+    public void log(Logger logger) {
+        for (RoadClass roadClass : RoadClass.values()) {
+            int c = roadClass.ordinal();
+            long searches = 0;
+            for (long count : statusCounts[c]) {
+                searches += count;
+            }
+            if (searches == 0) {
+                continue;
+            }
+            StringBuilder status = new StringBuilder();
+            for (DijkstraWithLimits.Status s : DijkstraWithLimits.Status.values()) {
+                status.append(' ').append(s).append('=').append(statusCounts[c][s.ordinal()]);
+            }
+            logger.info("Routing statistics for {}: {} searches,{}, {} ms in total", roadClass, searches, status,
+                    totalNanos[c] / 1000000);
+            logger.info("  settled nodes: {}", histogramToString(settledNodes[c]));
+            logger.info("  relaxed edges: {}", histogramToString(relaxedEdges[c]));
+            logger.info("  time (µs): {}", histogramToString(microseconds[c]));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+/**
+ * Search for the number of workers and the target duration of ranges with the highest
+ * throughput.
+ *
+ * The caller runs the detection with the current settings for a while and reports the measured
+ * throughput. The first measurement is a warm-up and discarded because it includes JIT
+ * compilation and reading the graph and the index from disk. Then the number of workers is lowered step by step, starting with the maximum,
+ * as long as the throughput increases. Then shorter and longer target durations of the ranges are
+ * tried with the best number of workers. Afterwards the best settings are kept.
+ */
+class ThroughputTuner {
+
+    /** Target durations tried after the number of workers is chosen, relative to the initial one. */
+    private static final double[] TARGET_FACTORS = {0.25, 4};
+    private static final int WARMUP = 0;
+    private static final int WORKERS = 1;
+    private static final int TARGETS = 2;
+    private static final int DONE = 3;
+
+    private final int workerStep;
+    private final long initialTargetNanos;
+    private int stage = WARMUP;
+    private int targetIndex = -1;
+    private int workers;
+    private long targetNanos;
+    private int bestWorkers;
+    private long bestTargetNanos;
+    private double bestThroughput = -1;
+
+    /**
+     * @param maxWorkers maximum number of workers, the first setting to measure
+     * @param targetNanos target duration of a range of the first setting
+     */
+    ThroughputTuner(int maxWorkers, long targetNanos) {
+        this.workerStep = Math.max(1, maxWorkers / 4);
+        this.initialTargetNanos = targetNanos;
+        this.workers = maxWorkers;
+        this.targetNanos = targetNanos;
+    }
+
+    int getWorkers() {
+        return workers;
+    }
+
+    long getTargetNanos() {
+        return targetNanos;
+    }
+
+    /**
+     * Check if the current measurement is the warm-up.
+     */
+    boolean isWarmingUp() {
+        return stage == WARMUP;
+    }
+
+    /**
+     * Check if the search is finished. The current settings are the best ones then.
+     */
+    boolean isDone() {
+        return stage == DONE;
+    }
+
+    /**
+     * Report the throughput of the current settings and switch to the next settings to measure.
+     *
+     * @param throughput processed nodes per second
+     */
+    void record(double throughput) {
+        if (stage == DONE) {
+            return;
+        }
+        if (stage == WARMUP) {
+            // The settings stay the same for the first real measurement.
+            stage = WORKERS;
+            return;
+        }
+        boolean improved = throughput > bestThroughput;
+        if (improved) {
+            bestThroughput = throughput;
+            bestWorkers = workers;
+            bestTargetNanos = targetNanos;
+        }
+        if (stage == WORKERS) {
+            if (improved && workers - workerStep >= 1) {
+                workers -= workerStep;
+                return;
+            }
+            stage = TARGETS;
+            workers = bestWorkers;
+        }
+        ++targetIndex;
+        if (targetIndex < TARGET_FACTORS.length) {
+            targetNanos = Math.round(initialTargetNanos * TARGET_FACTORS[targetIndex]);
+            return;
+        }
+        stage = DONE;
+        workers = bestWorkers;
+        targetNanos = bestTargetNanos;
+    }
+}
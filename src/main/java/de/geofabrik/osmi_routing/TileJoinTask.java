@@ -0,0 +1,98 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing;
+
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import de.geofabrik.osmi_routing.index.TileJoin;
+
+/**
+ * Fork/join task searching the candidates of a range of tiles for missing connections, see
+ * {@link TileJoin}.
+ *
+ * Ranges of more than one tile are split in halves. A single tile is processed by one worker which
+ * loads the edges of the tile and its halo and looks up the candidates of the tile in the order of
+ * their longitude. The results of both halves are concatenated in order like in
+ * {@link FinderTask}.
+ */
+class TileJoinTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UnconnectedFinderManager manager;
+    // positions of the first candidate of each tile in the candidate order, followed by the end
+    private final int[] tileStarts;
+    private final int firstTile;
+    private final int tileCount;
+    // result of the top level task, null for forked subtasks
+    private final MissingConnectionResult result;
+    private List<MissingConnection> missingConnections;
+
+    TileJoinTask(UnconnectedFinderManager manager, int[] tileStarts, int firstTile, int tileCount,
+            MissingConnectionResult result) {
+        this.manager = manager;
+        this.tileStarts = tileStarts;
+        this.firstTile = firstTile;
+        this.tileCount = tileCount;
+        this.result = result;
+    }
+
+    @Override
+    protected void compute() {
+        if (result == null) {
+            computeTiles();
+            return;
+        }
+        try {
+            computeTiles();
+            result.storeSuccessResult(missingConnections);
+        } catch (RuntimeException e) {
+            UnconnectedFinderManager.logger.catching(e);
+            result.storeFailureResult(e);
+        }
+    }
+
+    private void computeTiles() {
+        if (tileCount > 1) {
+            int half = tileCount / 2;
+            TileJoinTask first = new TileJoinTask(manager, tileStarts, firstTile, half, null);
+            TileJoinTask second = new TileJoinTask(manager, tileStarts, firstTile + half, tileCount - half, null);
+            invokeAll(first, second);
+            missingConnections = first.missingConnections;
+            missingConnections.addAll(second.missingConnections);
+            return;
+        }
+        final int start = tileStarts[firstTile];
+        final int count = tileStarts[firstTile + 1] - start;
+        OutputListener listener = new OutputListener() {
+            @Override
+            public void error(Exception ex) {
+                throw new RuntimeException("Search for missing connections failed for the tile of candidates " + start
+                        + " to " + (start + count - 1), ex);
+            }
+
+            @Override
+            public void complete(List<MissingConnection> results) {
+                missingConnections = results;
+            }
+        };
+        manager.createTileFinder(listener, start, count).run();
+    }
+}
@@ -22,21 +22,18 @@ import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Map;
 import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import com.graphhopper.coll.GHIntHashSet;
 import com.graphhopper.coll.GHIntObjectHashMap;
-import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.NodeAccess;
-import com.graphhopper.storage.index.LocationIndex;
-import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.storage.index.QueryResult.Position;
 import com.graphhopper.util.AngleCalc;
@@ -46,12 +43,17 @@ import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.Parameters;
-import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
 
+import de.geofabrik.osmi_routing.algorithm.CHDistanceOracle;
 import de.geofabrik.osmi_routing.algorithm.DijkstraWithLimits;
-import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+import de.geofabrik.osmi_routing.algorithm.EdgeDistanceCache;
+import de.geofabrik.osmi_routing.algorithm.EdgeOrientationStore;
 import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+import de.geofabrik.osmi_routing.flag_encoders.EdgeAttributes;
+import de.geofabrik.osmi_routing.index.ConstrainedLocationIndex;
+import de.geofabrik.osmi_routing.index.EdgeCandidatePredicate;
+import de.geofabrik.osmi_routing.index.TileJoin;
 import de.geofabrik.osmi_routing.reader.BarriersHook;
 
 public class UnconnectedFinder implements Runnable {
@@ -59,37 +61,83 @@ public class UnconnectedFinder implements Runnable {
     static final Logger logger = LogManager.getLogger(UnconnectedFinder.class.getName());
 
     private GraphHopperStorage storage;
-    private LocationIndex index;
     ThreadSafeOsmIdNoExitStoreAccessor nodeInfoStore;
-    OsmIdStore.ThreadSafeOsmIdAccessor wayIdStore;
     BarriersHook barriersHook;
-    AllRoadsFlagEncoder encoder;
+    EdgeAttributes edgeAttributes;
     private double maxDistance;
+    private ThreadLocal<FinderWorkerState> workerStates;
+    FinderWorkerState workerState;
     DijkstraWithLimits dijkstra;
+    private CHDistanceOracle chOracle;
+    private EdgeOrientationStore orientations;
+    private double[] edgeOffsets = new double[2];
+    // state of the current node used by the predicate of the location index lookup
+    private int currentEdge;
+    private int currentAdjNode;
+    private IntArrayList currentNeighbours;
+    private boolean endLevelValid;
+    private int endMinLevel;
+    private int endMaxLevel;
+    private final EdgeCandidatePredicate candidatePredicate = new EdgeCandidatePredicate() {
+        @Override
+        public boolean accept(EdgeIteratorState edge, int closestNode, Position position) {
+            // Check if the matched edge is the only edge connected to our node.
+            if (edge.getEdge() == currentEdge) {
+                return false;
+            }
+            // Check if the matched node is our adjacent node.
+            if (closestNode == currentAdjNode) {
+                return false;
+            }
+            // Check if matched node is not in the neighbourhood of our adjacent node.
+            if (currentNeighbours.contains(closestNode)) {
+                return false;
+            }
+            // Check if matched edge is on same level and the snapped position is not a tower node with 1 edge only
+            if (endLevelValid && edgeAttributes.isLevelValid(edge)) {
+                int foundMinLevel = edgeAttributes.getLevel(edge);
+                int foundMaxLevel = foundMinLevel + edgeAttributes.getLevelDiff(edge);
+                // Skip if snapped edge is on different layer and the snapped point is not a tower point.
+                // The last condition ensures that unconnected ways with different layers are reported if the open
+                // ends snaps onto a tower node. This is a likely case if two roads are unconnected but one is a bridge
+                // or tunnel.
+                if ((foundMinLevel > endMaxLevel || foundMaxLevel < endMinLevel) && position != Position.TOWER) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    };
     AngleCalc angleCalc;
     DistanceCalc distanceCalc;
     private final OutputListener listener;
     private List<MissingConnection> resultsMissingConnections;
-    private List<DuplicatedEdge> resultsDuplicatedEdges;
     private int startId;
     private int count;
-    Map<RoadClass, int[]> priorities;
+    // permutation of the node IDs to process, null to process them in ID order
+    private int[] nodeOrder = null;
+    // increasing search radii, null if every query uses the maximum distance
+    private double[] searchRadii = null;
+    // edges around the nodes to process if the tile join is used, null otherwise
+    private TileJoin.Tile tile = null;
+    private PriorityTable priorities;
     private boolean doRouting;
 
-    public UnconnectedFinder(GraphHopperSimple hopper, AllRoadsFlagEncoder encoder,
+    public UnconnectedFinder(GraphHopperSimple hopper, EdgeAttributes edgeAttributes,
             double maxDistance, GraphHopperStorage graphhopperStorage,
-            ThreadSafeOsmIdNoExitStoreAccessor infoStore, OsmIdStore.ThreadSafeOsmIdAccessor wayIdStore, BarriersHook barriersHook,
-            OutputListener listener, int start, int count, Map<RoadClass, int[]> priorities,
-            boolean doRouting) {
-        this.encoder = encoder;
+            ThreadSafeOsmIdNoExitStoreAccessor infoStore, BarriersHook barriersHook,
+            OutputListener listener, int start, int count, PriorityTable priorities,
+            boolean doRouting, ThreadLocal<FinderWorkerState> workerStates, CHDistanceOracle chOracle,
+            EdgeOrientationStore orientations) {
+        this.edgeAttributes = edgeAttributes;
         this.maxDistance = maxDistance;
         this.angleCalc = new AngleCalc();
         this.distanceCalc = new DistanceCalc2D();
         this.storage = graphhopperStorage;
-        this.dijkstra = new DijkstraWithLimits(this.storage, 80, this.maxDistance);
-        this.index = (LocationIndexTree) hopper.getLocationIndex();
+        this.workerStates = workerStates;
+        this.chOracle = chOracle;
+        this.orientations = orientations;
         this.nodeInfoStore = infoStore;
-        this.wayIdStore = wayIdStore;
         this.barriersHook = barriersHook;
         this.listener = listener;
         this.startId = start;
@@ -98,6 +146,31 @@ public class UnconnectedFinder implements Runnable {
         this.doRouting = doRouting;
     }
 
+    /**
+     * Process the nodes in the given order. The start and count passed to the constructor are
+     * positions in this array instead of node IDs.
+     */
+    public void setNodeOrder(int[] nodeOrder) {
+        this.nodeOrder = nodeOrder;
+    }
+
+    /**
+     * Query the location index with increasing radii instead of the maximum distance only.
+     *
+     * @param searchRadii increasing radii ending with the maximum distance, null to disable
+     */
+    public void setSearchRadii(double[] searchRadii) {
+        this.searchRadii = searchRadii;
+    }
+
+    /**
+     * Look up the closest edges in a tile instead of the location index. The nodes have to be
+     * in the tile and sorted by their longitude.
+     */
+    public void setTile(TileJoin.Tile tile) {
+        this.tile = tile;
+    }
+
     public boolean ready() {
         return startId != -1;
     }
@@ -118,9 +191,25 @@ public class UnconnectedFinder implements Runnable {
         return Math.min(result, 360 - result);
     }
 
+    /**
+     * Reverse an orientation (east-based, -180° to +180°).
+     */
+    private static double reverseOrientation(double orientation) {
+        return orientation >= 0 ? orientation - 180 : orientation + 180;
+    }
+
     private double getAngleDiff(EdgeIteratorState openEnd, QueryResult matched) throws IllegalStateException {
         QueryResult.Position matchType = matched.getSnappedPosition();
-        NodeAccess nodeAccess = storage.getNodeAccess();
+        // The orientation of the open end at its base node is precomputed.
+        double orientationOpenEnd = orientations.getStartOrientation(openEnd);
+        if (matchType == QueryResult.Position.TOWER) {
+            // The orientation of the matched edge towards the tower node is the reversed
+            // orientation of the edge leaving the tower node.
+            EdgeIteratorState matchedEdge = matched.getClosestEdge();
+            double orientationMatched = matched.getWayIndex() == 0 ? orientations.getStartOrientation(matchedEdge)
+                    : orientations.getEndOrientation(matchedEdge);
+            return normaliseAngle(reverseOrientation(orientationMatched), orientationOpenEnd);
+        }
         // Get the two locations of the matched edge to calculate its orientation.
         double matchedLat1 = Double.MAX_VALUE;
         double matchedLon1 = Double.MAX_VALUE;
@@ -128,111 +217,82 @@ public class UnconnectedFinder implements Runnable {
         double matchedLon2 = matched.getSnappedPoint().getLon();
         double matchedLat3 = Double.MAX_VALUE;
         double matchedLon3 = Double.MAX_VALUE;
+        // The geometries are read from the edge cache of the worker, the slot of an edge is only
+        // valid until the next edge is loaded.
+        EdgeDistanceCache edgeCache = dijkstra.getEdgeDistanceCache();
+        int slot;
         switch (matchType) {
-        case TOWER :
-            int wayIndex = matched.getWayIndex();
-            PointList points = matched.getClosestEdge().fetchWayGeometry(3);
-            if (wayIndex == 0) {
-                matchedLat1 = points.getLat(1);
-                matchedLon1 = points.getLon(1);
-            } else {
-                matchedLat1 = points.getLat(points.size() - 2);
-                matchedLon1 = points.getLon(points.size() - 2);
-            }
-            break;
         case EDGE:
-            PointList allPoints = matched.getClosestEdge().fetchWayGeometry(3);
-            int matchingI = dijkstra.lowerNeighbourPillars(allPoints, matched.getSnappedPoint());
+            int matchingI = dijkstra.lowerNeighbourPillars(matched.getClosestEdge(), matched.getSnappedPoint());
             if (matchingI < 0) {
                 long osmId = nodeInfoStore.getOsmId(openEnd.getBaseNode());
                 throw new IllegalStateException("Could not find a matching segment for OSM node " + Long.toString(osmId));
             }
-            matchedLat1 = allPoints.getLat(matchingI);
-            matchedLon1 = allPoints.getLon(matchingI);
-            matchedLat3 = allPoints.getLat(matchingI + 1);
-            matchedLon3 = allPoints.getLon(matchingI + 1);
+            slot = edgeCache.load(matched.getClosestEdge());
+            matchedLat1 = edgeCache.getLat(slot, matchingI);
+            matchedLon1 = edgeCache.getLon(slot, matchingI);
+            matchedLat3 = edgeCache.getLat(slot, matchingI + 1);
+            matchedLon3 = edgeCache.getLon(slot, matchingI + 1);
             break;
         case PILLAR:
         default:
             // The matched position is a pillar node.
             // Get the two neighbouring nodes.
-            PointList pointsAll = matched.getClosestEdge().fetchWayGeometry(3);
-            matchedLat1 = pointsAll.getLat(matched.getWayIndex() - 1);
-            matchedLon1 = pointsAll.getLat(matched.getWayIndex() - 1);
-            matchedLat3 = pointsAll.getLat(matched.getWayIndex() + 1);
-            matchedLon3 = pointsAll.getLat(matched.getWayIndex() + 1);
+            slot = edgeCache.load(matched.getClosestEdge());
+            matchedLat1 = edgeCache.getLat(slot, matched.getWayIndex() - 1);
+            matchedLon1 = edgeCache.getLon(slot, matched.getWayIndex() - 1);
+            matchedLat3 = edgeCache.getLat(slot, matched.getWayIndex() + 1);
+            matchedLon3 = edgeCache.getLon(slot, matched.getWayIndex() + 1);
             break;
         }
-        // Get the two locations of the open end edge to calculate its orientation.
         double orientationMatched12 = angleCalc.calcOrientation(matchedLat1, matchedLon1, matchedLat2, matchedLon2, false);
         double orientationMatched23 = angleCalc.calcOrientation(matchedLat2, matchedLon2, matchedLat3, matchedLon3, false);
-
-        double openEndLat1 = nodeAccess.getLat(openEnd.getBaseNode());
-        double openEndLon1 = nodeAccess.getLon(openEnd.getBaseNode());
-        PointList pointsAll = openEnd.fetchWayGeometry(2);
-        // index of PointList.toGHPoint() is 0 because the PointList is retrieved without the base node
-        double openEndLat2 = pointsAll.getLat(0);
-        double openEndLon2 = pointsAll.getLon(0);
-        double orientationOpenEnd = angleCalc.calcOrientation(openEndLat1, openEndLon1, openEndLat2, openEndLon2, false);
         if (matchType != QueryResult.Position.PILLAR) {
-            return normaliseAngle(Math.toDegrees(orientationMatched12), Math.toDegrees(orientationOpenEnd)/*, matchType*/);
+            return normaliseAngle(Math.toDegrees(orientationMatched12), orientationOpenEnd/*, matchType*/);
         } else {
-            return 0.5 * (normaliseAngle(Math.toDegrees(orientationMatched12), Math.toDegrees(orientationOpenEnd))
-                    + normaliseAngle(Math.toDegrees(orientationMatched23), Math.toDegrees(orientationOpenEnd)));
+            return 0.5 * (normaliseAngle(Math.toDegrees(orientationMatched12), orientationOpenEnd)
+                    + normaliseAngle(Math.toDegrees(orientationMatched23), orientationOpenEnd));
         }
     }
 
-    private Double getDistanceOnGraph(int fromNodeId, QueryResult closestResult) {
+    /**
+     * Get the distance on the graph from a node to the closest candidate using the contraction
+     * hierarchy.
+     */
+    private double getDistanceOnGraphCH(int fromNodeId, QueryResult closestResult) {
         if (closestResult.getSnappedPosition() == QueryResult.Position.TOWER) {
-            DijkstraWithLimits.Result result = dijkstra.route(fromNodeId, closestResult.getClosestNode());
-            return result.distance;
+            return chOracle.route(fromNodeId, closestResult.getClosestNode());
         }
-        if (closestResult.getSnappedPosition() == QueryResult.Position.PILLAR) {
-            DijkstraWithLimits.Result result = dijkstra.routeToPillar(fromNodeId, closestResult.getClosestEdge(), closestResult.getSnappedPoint());
-            return result.distance;
-        }
-        DijkstraWithLimits.Result result = dijkstra.routeBetweenPillars(fromNodeId, closestResult.getClosestEdge(), closestResult.getSnappedPoint());
-        return result.distance;
+        dijkstra.distancesAlongEdge(closestResult.getClosestEdge(), closestResult.getSnappedPoint(), edgeOffsets);
+        return chOracle.routeToPoint(fromNodeId, closestResult.getClosestEdge(), edgeOffsets);
     }
 
-    private int getPriority(AllRoadsFlagEncoder.RoadClass roadClass, boolean isPrivate, double distance) {
-        if (distance == 0) {
-            // Two nodes at the same location is always an error of highest priority.
-            return 1;
+    /**
+     * Get the distance on the graph from a node to the snapped point of the closest candidate.
+     *
+     * The contraction hierarchy is used if it is available, a bidirectional search otherwise.
+     */
+    private double getDistanceOnGraph(int fromNodeId, QueryResult closestResult, RoadClass roadClass) {
+        if (chOracle != null) {
+            return getDistanceOnGraphCH(fromNodeId, closestResult);
         }
-        int[] thisClassPriorities = priorities.getOrDefault(roadClass, new int[]{0, 0, 0, 0});
-        double categoryWidth = maxDistance / 4;
-        int index = (int) (distance / categoryWidth);
-        index = Math.min(3, index);
-        int priority = thisClassPriorities[index];
-        // Some minor road classes should not pop up in our most important category because they
-        // lead to many false positives.
-        boolean unimportant = false;
-        switch (roadClass) {
-            case SERVICE_DRIVEWAY:
-            case SERVICE_PARKING_AISLE:
-            case FOOTWAY:
-            case CYCLEWAY:
-            case PATH:
-            case STEPS:
-            case PLATFORM:
-            case CONSTRUCTION:
-                unimportant = true;
-                break;
-            default:
-                break;
+        AdaptiveNodeLimit nodeLimit = workerState.getNodeLimit();
+        if (nodeLimit != null) {
+            dijkstra.setMaxNodes(nodeLimit.getLimit(roadClass));
         }
-        if (priority > 0 && distance < 1.0 && !unimportant) {
-            priority = 1;
-        } else if (priority > 0 && distance < 2.0 && !unimportant) {
-            priority = 2;
-        } else if (priority > 0 && distance < 2.0 && unimportant) {
-            priority = Math.max(2, priority - 1);
+        long start = System.nanoTime();
+        DijkstraWithLimits.Result result;
+        if (closestResult.getSnappedPosition() == QueryResult.Position.TOWER) {
+            result = dijkstra.routeBidirectional(fromNodeId, closestResult.getClosestNode());
+        } else {
+            result = dijkstra.routeBidirectionalToPoint(fromNodeId, closestResult.getClosestEdge(), closestResult.getSnappedPoint());
         }
-        if (isPrivate) {
-            priority += 1;
+        long duration = System.nanoTime() - start;
+        workerState.getStatistics().record(roadClass, result.status, dijkstra.getSettledNodes(), dijkstra.getRelaxedEdges(), duration);
+        if (nodeLimit != null && !nodeLimit.isCalibrated()) {
+            nodeLimit.record(roadClass, result.status, dijkstra.getReachedNodes());
         }
-        return priority;
+        return result.distance;
     }
 
     /**
@@ -255,11 +315,7 @@ public class UnconnectedFinder implements Runnable {
         // Get orientation of the open end
         double openEndLat1 = storage.getNodeAccess().getLat(openEnd.getBaseNode());
         double openEndLon1 = storage.getNodeAccess().getLon(openEnd.getBaseNode());
-        PointList pointsAll = openEnd.fetchWayGeometry(2);
-        // index of PointList.toGHPoint() is 0 because the PointList is retrieved without the base node
-        double openEndLat2 = pointsAll.getLat(0);
-        double openEndLon2 = pointsAll.getLon(0);
-        double orientationOpenEnd = Math.toDegrees(angleCalc.calcOrientation(openEndLat1, openEndLon1, openEndLat2, openEndLon2, false));
+        double orientationOpenEnd = orientations.getStartOrientation(openEnd);
 
         // Get orientation of the connection line.
         double matchedPointLon = queryResult.getSnappedPoint().lon;
@@ -286,7 +342,7 @@ public class UnconnectedFinder implements Runnable {
         if (roadClass == RoadClass.PATH || roadClass == RoadClass.FOOTWAY || roadClass == RoadClass.STEPS) {
             // For footways it is adviseable to compare the distance on the graph with the beeline distance. If they
             // don't differ a lot, it is likely a false positive or less important issue.
-            double distanceOnGraph = doRouting ? getDistanceOnGraph(openEnd.getBaseNode(), queryResult) : 1000;
+            double distanceOnGraph = doRouting ? getDistanceOnGraph(openEnd.getBaseNode(), queryResult, roadClass) : 1000;
             double ratio = distanceOnGraph / queryResult.getQueryDistance();
             if (ratio < 2) {
                 // Hide it totally from output
@@ -299,133 +355,81 @@ public class UnconnectedFinder implements Runnable {
         return 0;
     }
 
+    /**
+     * Check a dead end for missing connections. The node has to be a candidate selected by
+     * {@link CandidateFilter}.
+     */
     private void checkNode(int id) throws IOException, IllegalStateException {
-        EdgeExplorer explorer = storage.createEdgeExplorer();
-        if (storage.isNodeRemoved(id)) {
-            return;
-        }
-        long osmId;
-        try {
-            osmId = nodeInfoStore.getOsmId(id);
-        } catch (NullPointerException e) {
-            return;
-        }
-        if (nodeInfoStore.getNoExit(id)) {
-            // node is tagged with noexit=yes
-            return;
-        }
+        long osmId = nodeInfoStore.getOsmId(id);
+        EdgeExplorer explorer = workerState.getNodeExplorer();
         EdgeIterator iter = explorer.setBaseNode(id);
         RoadClass roadClass = RoadClass.UNDEFINED;
         boolean isPrivate = false;
 
-        // edge ID of the blind end node we are currently working on
-        ArrayList<EdgeIteratorState> edgeIteratorStates = new ArrayList<EdgeIteratorState>(5);
-        // IDs of the adjacent node
-        ArrayList<Integer> adjNodes = new ArrayList<Integer>(5);
+        // IDs of the adjacent nodes, reused for all nodes of this worker
+        IntArrayList adjNodes = workerState.getAdjNodes();
+        adjNodes.clear();
 
         // get all edges and neighbour nodes
         while (iter.next()) {
-            EdgeIteratorState state = iter.detach(false);
-            adjNodes.add(state.getAdjNode());
-            edgeIteratorStates.add(state);
-            roadClass = encoder.getRoadClass(iter);
-            isPrivate = encoder.isPrivateAccess(iter);
-        }
-        // check for duplicated edges
-        int adjNode = -1;
-        for (int i = 0; i < adjNodes.size() - 1; ++i) {
-            adjNode = adjNodes.get(i);
-            for (int j = i + 1; j < adjNodes.size(); ++j) {
-                if (adjNodes.get(j) == adjNode) {
-                    // Compare geometry
-                    EdgeIteratorState edge1 = edgeIteratorStates.get(i);
-                    EdgeIteratorState edge2 = edgeIteratorStates.get(j);
-                    if (edge1.getDistance() != edge2.getDistance()) {
-                        continue;
-                    }
-                    PointList points = edge1.fetchWayGeometry(3);
-                    if (points.equals(edge2.fetchWayGeometry(3))) {
-                        long wayId1 = wayIdStore.getOsmId(edge1.getEdge());
-                        long wayId2 = wayIdStore.getOsmId(edge2.getEdge());
-                        boolean areaInvolved = encoder.isArea(edge1) || encoder.isArea(edge2);
-                        resultsDuplicatedEdges.add(new DuplicatedEdge(points, wayId1, wayId2, areaInvolved));
-                        break;
-                    }
-                }
-            }
+            adjNodes.add(iter.getAdjNode());
+            roadClass = edgeAttributes.getRoadClass(iter);
+            isPrivate = edgeAttributes.isPrivateAccess(iter);
         }
-        if (adjNodes.size() > 1 || edgeIteratorStates.size() != 1) {
+        if (adjNodes.size() != 1) {
             // more than one or zero edges leading to this node
             return;
         }
 
-        adjNode = adjNodes.get(0);
+        int adjNode = adjNodes.get(0);
+
+        // Position the explorer on the only edge again. It serves as the state of the edge until
+        // the next node is checked.
+        EdgeIterator firstEdge = explorer.setBaseNode(id);
+        firstEdge.next();
+        NodeAccess nodeAccess = storage.getNodeAccess();
+        double lat = nodeAccess.getLat(id);
+        double lon = nodeAccess.getLon(id);
 
         // Retrieve edges connected the only adjacent node because they are often matched by the
         // location index lookup but are usually false positives. We exclude them before we later
         // check their geometric distance on the graph.
-        EdgeIteratorState firstEdge = edgeIteratorStates.get(0);
-        PointList fromPoints = firstEdge.fetchWayGeometry(1);
-        List<Integer> neighboursOfAdjNode = new ArrayList<Integer>();
-        EdgeIterator adjIter = explorer.setBaseNode(adjNode);
+        IntArrayList neighboursOfAdjNode = workerState.getNeighbours();
+        neighboursOfAdjNode.clear();
+        EdgeIterator adjIter = workerState.getNeighbourExplorer().setBaseNode(adjNode);
         while (adjIter.next()) {
             int adjAdjNode = adjIter.getAdjNode();
             if (id != adjAdjNode) {
                 neighboursOfAdjNode.add(adjAdjNode);
             }
         }
-        // fetch edge geometry
-        List<QueryResult> result = ((LocationIndexTree) index).findNClosest(fromPoints.getLat(0), fromPoints.getLon(0), EdgeFilter.ALL_EDGES, maxDistance);
-        // distance to closest accepted match
-        double distanceClosest = Double.MAX_VALUE;
-        QueryResult closestResult = null;
-        // iterate over results
-        boolean endLevelValid = encoder.isLevelValid(firstEdge);
-        int endMinLevel = encoder.getLevel(firstEdge);
-        int endMaxLevel = endMinLevel + encoder.getLevelDiff(firstEdge);
-        for (QueryResult r : result) {
-            EdgeIteratorState foundEdge = r.getClosestEdge();
-            // Check if the matched edge is the only edge connected to our node.
-            if (foundEdge.getEdge() == edgeIteratorStates.get(0).getEdge()) {
-                continue;
-            }
-            // Check if the matched node is our adjacent node.
-            if (r.getClosestNode() == adjNode) {
-                continue;
-            }
-            // Check if matched node is not in the neighbourhood of our adjacent node.
-            if (neighboursOfAdjNode.contains(r.getClosestNode())) {
-                continue;
-            }
-            // Check if matched edge is on same level and the snapped position is not a tower node with 1 edge only
-            if (endLevelValid && encoder.isLevelValid(r.getClosestEdge())) {
-                int foundMinLevel = encoder.getLevel(r.getClosestEdge());
-                int foundMaxLevel = foundMinLevel + encoder.getLevelDiff(r.getClosestEdge());
-                // Skip if snapped edge is on different layer and the snapped point is not a tower point.
-                // The last condition ensures that unconnected ways with different layers are reported if the open
-                // ends snaps onto a tower node. This is a likely case if two roads are unconnected but one is a bridge
-                // or tunnel.
-                if ((foundMinLevel > endMaxLevel || foundMaxLevel < endMinLevel)
-                        && r.getSnappedPosition() != Position.TOWER){
-                    continue;
-                }
-            }
-            double distance = r.getQueryDistance();
-            if (distance < distanceClosest) {
-                distanceClosest = distance;
-                closestResult = r;
-            }
+        currentEdge = firstEdge.getEdge();
+        currentAdjNode = adjNode;
+        currentNeighbours = neighboursOfAdjNode;
+        endLevelValid = edgeAttributes.isLevelValid(firstEdge);
+        endMinLevel = edgeAttributes.getLevel(firstEdge);
+        endMaxLevel = endMinLevel + edgeAttributes.getLevelDiff(firstEdge);
+        ConstrainedLocationIndex.Query query = workerState.getLocationQuery();
+        QueryResult closestResult;
+        if (tile != null) {
+            closestResult = tile.findClosest(lat, lon, candidatePredicate);
+        } else if (searchRadii == null) {
+            closestResult = query.findClosest(lat, lon, candidatePredicate, maxDistance);
+        } else {
+            closestResult = query.findClosest(lat, lon, candidatePredicate, searchRadii);
+            workerState.recordRadiusStep(query.getLastStep());
         }
-        if (distanceClosest == Double.MAX_VALUE) {
+        if (closestResult == null) {
             return;
         }
+        double distanceClosest = closestResult.getQueryDistance();
         // check if the closest node intersects with a barrier
-        if (barriersHook.crossesBarrier(fromPoints.getLon(0), fromPoints.getLat(0), closestResult.getSnappedPoint().lon, closestResult.getSnappedPoint().lat)) {
+        if (barriersHook.crossesBarrier(lon, lat, closestResult.getSnappedPoint().lon, closestResult.getSnappedPoint().lat)) {
             return;
         }
         GHPoint queryPoint = closestResult.getQueryPoint();
         GHPoint snappedPoint = closestResult.getSnappedPoint();
-        int priority = getPriority(roadClass, isPrivate, distanceClosest);
+        int priority = priorities.getPriority(roadClass, isPrivate, distanceClosest);
         priority += getImportanceDecrement(roadClass, firstEdge, closestResult);
         if (priority > 0 && priority <= 6) {
             resultsMissingConnections.add(new MissingConnection(queryPoint, snappedPoint, distanceClosest, id, osmId,
@@ -435,8 +439,8 @@ public class UnconnectedFinder implements Runnable {
 
     private void runAndCatchExceptions() {
         try {
-            for (int nodeId = startId; nodeId < startId + count; ++nodeId) {
-                checkNode(nodeId);
+            for (int i = startId; i < startId + count; ++i) {
+                checkNode(nodeOrder == null ? i : nodeOrder[i]);
             }
         } catch (IOException e) {
             throw new RuntimeException("Unable to read internal data", e);
@@ -447,11 +451,17 @@ public class UnconnectedFinder implements Runnable {
 
     @Override
     public void run() {
+        // The search state of DijkstraWithLimits is reused by all chunks processed by this thread.
+        workerState = workerStates.get();
+        dijkstra = workerState.getDijkstra();
         resultsMissingConnections = new ArrayList<MissingConnection>();
-        resultsDuplicatedEdges = new ArrayList<DuplicatedEdge>();
         try {
+            long allocatedBefore = FinderWorkerState.currentThreadAllocatedBytes();
             runAndCatchExceptions();
-            listener.complete(resultsMissingConnections, resultsDuplicatedEdges);
+            if (allocatedBefore >= 0) {
+                workerState.recordAllocation(FinderWorkerState.currentThreadAllocatedBytes() - allocatedBefore, count);
+            }
+            listener.complete(resultsMissingConnections);
 
         } catch (RuntimeException e) {
             listener.error(e);
@@ -23,17 +23,14 @@
 package de.geofabrik.osmi_routing;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -45,8 +42,18 @@ import com.graphhopper.reader.osm.pbf.PbfBlobResult;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.util.AngleCalc;
 
+import de.geofabrik.osmi_routing.algorithm.CHDistanceOracle;
+import de.geofabrik.osmi_routing.algorithm.DijkstraWithLimits;
+import de.geofabrik.osmi_routing.algorithm.EdgeDistanceCache;
+import de.geofabrik.osmi_routing.algorithm.EdgeOrientationStore;
+import de.geofabrik.osmi_routing.algorithm.LandmarkStore;
 import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
 import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+import de.geofabrik.osmi_routing.flag_encoders.EdgeAttributes;
+import de.geofabrik.osmi_routing.flag_encoders.PackedEdgeAttributes;
+import de.geofabrik.osmi_routing.index.ConstrainedLocationIndex;
+import de.geofabrik.osmi_routing.index.HilbertOrder;
+import de.geofabrik.osmi_routing.index.TileJoin;
 import de.geofabrik.osmi_routing.reader.BarriersHook;
 
 public class UnconnectedFinderManager {
@@ -60,189 +67,582 @@ public class UnconnectedFinderManager {
         BarriersHook barriersHook;
         boolean doRouting;
         AllRoadsFlagEncoder encoder;
+        private boolean packEdgeAttributes = false;
+        private EdgeAttributes edgeAttributes;
+        private final Path missingConnectionsPath;
+        private final Path duplicatedEdgesPath;
+        private final Path checkpointPath;
         GeoJSONWriter missingConnectionsWriter;
         GeoJSONWriter duplicatedEdgesWriter;
         private double maxDistance;
         AngleCalc angleCalc;
-        private final Lock lock;
-        private final Condition dataWaitCondition;
-        private final Queue<MissingConnectionResult> results;
-        ExecutorService executorService;
+        // Ring buffer of the results of submitted chunks in the order of their node IDs. It is
+        // only accessed by the thread calling process(). Workers only touch their own result.
+        private final MissingConnectionResult[] results;
+        private int oldestResult = 0;
+        private int pendingResults = 0;
+        ForkJoinPool forkJoinPool;
         private int threadCount;
-        HashMap<RoadClass, int[]> priorities;
-        private int increment = 100000;
+        private PriorityTable priorities;
+        // maximum number of nodes reached by a routing request
+        static final int MAX_NODES = 80;
+        private ThreadLocal<FinderWorkerState> workerStates;
+        private final List<FinderWorkerState> allWorkerStates = Collections.synchronizedList(new ArrayList<FinderWorkerState>());
+        private boolean goalDirected = false;
+        private boolean adaptiveNodeLimit = false;
+        // node limit shared by all workers, null if the node limit is fixed
+        private AdaptiveNodeLimit nodeLimit = null;
+        // number of candidates searched by the calibration of the adaptive node limit
+        static final int CALIBRATION_CANDIDATES = 100000;
+        // number of sampled candidates searched by one task of the calibration
+        static final int CALIBRATION_RANGE = 1000;
+        private boolean hilbertOrder = false;
+        // number of radii of location index queries with escalating radius
+        static final int RADIUS_STEPS = 4;
+        // increasing search radii, null if every query uses the maximum distance
+        private double[] searchRadii = null;
+        private boolean useTileJoin = false;
+        private TileJoin tileJoin = null;
+        // IDs of the nodes to process, see CandidateFilter
+        private int[] nodeOrder = null;
+        private CHDistanceOracle chOracle;
+        private int landmarkCount = 0;
+        private EdgeOrientationStore orientations;
+        // Number of node IDs of the ranges handed over to the pool. The tasks split them further.
+        private int increment = 16384;
+        // target duration of the search of a range which is not split any further
+        private long chunkNanos = FinderTask.TARGET_NANOS;
+        private boolean autoTune = false;
+        // duration of the measurement of one setting of the auto tuning
+        static final long TUNING_PHASE_NANOS = 20000000000L;
+        private boolean resume = false;
+        // progress written to the checkpoint file, null before the detection of missing connections
+        private DetectionCheckpoint checkpoint = null;
+        private long lastCheckpoint;
+        // minimum time between two checkpoints
+        static final long CHECKPOINT_INTERVAL_NANOS = 60000000000L;
 
         public UnconnectedFinderManager(GraphHopperSimple hopper, AllRoadsFlagEncoder encoder, String outputDirectory, double maxDistance, int workers) throws IOException {
             this.hopper = hopper;
             this.encoder = encoder;
-            this.missingConnectionsWriter = new GeoJSONWriter(Paths.get(outputDirectory, "unconnected_nodes.json"));
-            this.duplicatedEdgesWriter = new GeoJSONWriter(Paths.get(outputDirectory, "duplicated_edges.json"));
+            // The writers are created when the detection starts, a resumed run appends to the existing files.
+            this.missingConnectionsPath = Paths.get(outputDirectory, "unconnected_nodes.json");
+            this.duplicatedEdgesPath = Paths.get(outputDirectory, "duplicated_edges.json");
+            this.checkpointPath = Paths.get(outputDirectory, "unconnected_nodes.checkpoint");
             this.maxDistance = maxDistance;
             this.angleCalc = new AngleCalc();
 
-            // Create the thread synchronisation primitives.
-            lock = new ReentrantLock();
-            dataWaitCondition = lock.newCondition();
-
-            // Create the queue of blobs being decoded.
-            results = new LinkedList<MissingConnectionResult>();
-            
             this.threadCount = workers;
-            executorService = Executors.newFixedThreadPool(threadCount);
-            initPriorities();
-        }
-
-        private void initPriorities() {
-            priorities = new HashMap<AllRoadsFlagEncoder.RoadClass, int[]>();
-            priorities.put(RoadClass.MOTORWAY,      new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.MOTORWAY_LINK, new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.TRUNK,         new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.TRUNK_LINK,    new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.PRIMARY,       new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.PRIMARY_LINK,  new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.SECONDARY,     new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.SECONDARY_LINK, new int[]{1, 1, 1, 2});
-            priorities.put(RoadClass.TERTIARY,      new int[]{2, 2, 3, 3});
-            priorities.put(RoadClass.TERTIARY_LINK, new int[]{2, 2, 3, 3});
-            priorities.put(RoadClass.UNCLASSIFIED,  new int[]{2, 2, 3, 3});
-            priorities.put(RoadClass.RESIDENTIAL,   new int[]{2, 2, 3, 3});
-            priorities.put(RoadClass.LIVING_STREET, new int[]{2, 3, 3, 4});
-            priorities.put(RoadClass.TRACK,         new int[]{2, 2, 3, 4});
-            priorities.put(RoadClass.PEDESTRIAN,    new int[]{3, 4, 4, 5});
-            priorities.put(RoadClass.FOOTWAY,       new int[]{4, 5, 5, 5});
-            priorities.put(RoadClass.CYCLEWAY,      new int[]{4, 5, 5, 5});
-            priorities.put(RoadClass.PATH,          new int[]{4, 5, 5, 5});
-            priorities.put(RoadClass.STEPS,         new int[]{5, 5, 5, 5});
-            priorities.put(RoadClass.SERVICE,       new int[]{3, 4, 4, 4});
-            priorities.put(RoadClass.SERVICE_ALLEY, new int[]{3, 4, 4, 5});
-            priorities.put(RoadClass.SERVICE_DRIVEWAY, new int[]{4, 4, 5, 5});
-            priorities.put(RoadClass.SERVICE_PARKING_AISLE, new int[]{4, 4, 5, 5});
-            priorities.put(RoadClass.ROAD,          new int[]{3, 3, 4, 4});
-            priorities.put(RoadClass.RACEWAY,       new int[]{2, 2, 2, 3});
-            priorities.put(RoadClass.FERRY,         new int[]{2, 3, 3, 3});
-            priorities.put(RoadClass.PLATFORM,      new int[]{5, 5, 5, 6});
-            priorities.put(RoadClass.CONSTRUCTION,  new int[]{3, 4, 5, 6});
-        }
-
-        private void waitForUpdate() {
-            try {
-                dataWaitCondition.await();
-            } catch (InterruptedException e) {
-                throw new RuntimeException("Thread was interrupted.", e);
-            }
+            // Allow twice as many ranges as workers to be in flight. Workers can go on with the
+            // next ranges while the oldest result is written.
+            results = new MissingConnectionResult[2 * threadCount];
+            forkJoinPool = new ForkJoinPool(threadCount);
+            initPriorities(null);
+        }
+
+        /**
+         * Compile the default priorities and override them by the rules of a file.
+         *
+         * @param rulesFile properties file with priority rules, null to use the defaults only
+         */
+        public void initPriorities(Path rulesFile) throws IOException {
+            priorities = new PriorityTable(PriorityTable.loadRules(rulesFile), maxDistance);
         }
 
-        private void signalUpdate() {
-            dataWaitCondition.signal();
+        private void addResult(MissingConnectionResult result) {
+            results[(oldestResult + pendingResults) % results.length] = result;
+            ++pendingResults;
         }
 
         private void sendResultsToSink(int targetQueueSize) {
-            while (results.size() > targetQueueSize) {
-                // Get the next result from the queue and wait for it to complete.
-                MissingConnectionResult r = results.remove();
-                while (!r.isComplete()) {
-                    // The thread hasn't finished processing yet so wait for an
-                    // update from another thread before checking again.
-                    waitForUpdate();
-                }
+            while (pendingResults > targetQueueSize) {
+                // Take the oldest result and wait for it to complete. Later chunks which are
+                // already complete have to wait because the output is written in order.
+                MissingConnectionResult r = results[oldestResult];
+                results[oldestResult] = null;
+                oldestResult = (oldestResult + 1) % results.length;
+                --pendingResults;
+                r.awaitCompletion();
 
                 try {
                     if (!r.isSuccess()) {
                         throw new RuntimeException("A worker thread failed, aborting.", r.getException());
                     }
-                    lock.unlock();
                     missingConnectionsWriter.writeMissingConnections(r.getMissingConnections());
                     missingConnectionsWriter.flush();
-                    duplicatedEdgesWriter.writeDuplicatedEdges(r.getDuplicates());
-                    duplicatedEdgesWriter.flush();
+                    if (System.nanoTime() - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+                        storeCheckpoint(r.getEnd());
+                    }
                 } catch (Exception e) {
                     logger.fatal(e);
                     System.exit(1);
-                } finally {
-                    lock.lock();
                 }
             }
         }
         
+        /**
+         * Record that the results of all candidates before the given position are written.
+         */
+        private void storeCheckpoint(int written) throws IOException {
+            checkpoint.setProgress(written, missingConnectionsWriter.getFileSize(), missingConnectionsWriter.isEmpty());
+            checkpoint.store(checkpointPath);
+            lastCheckpoint = System.nanoTime();
+        }
+
+        /**
+         * Get all settings which affect the order or the content of the output.
+         */
+        private String getCheckpointSettings() {
+            return "radius=" + maxDistance + " hilbert_order=" + hilbertOrder + " tile_join=" + useTileJoin
+                    + " do_routing=" + doRouting + " contraction_hierarchies=" + (chOracle != null)
+                    + " goal_directed=" + goalDirected + " landmarks=" + landmarkCount
+                    + " adaptive_node_limit=" + adaptiveNodeLimit + " priorities=" + priorities.getHash();
+        }
+
+        /**
+         * Open the output file of missing connections and write the first checkpoint.
+         *
+         * @return position of the first candidate to process
+         */
+        private int startDetection(DetectionCheckpoint resumeFrom) throws IOException {
+            int first = 0;
+            if (resumeFrom != null) {
+                first = resumeFrom.getWritten();
+                logger.info("Resuming the detection of unconnected roads at candidate {} of {}", first, nodeOrder.length);
+                missingConnectionsWriter = new GeoJSONWriter(missingConnectionsPath, resumeFrom.getBytes(), resumeFrom.isEmpty());
+            } else {
+                missingConnectionsWriter = new GeoJSONWriter(missingConnectionsPath);
+            }
+            storeCheckpoint(first);
+            return first;
+        }
+
+        private void writeDuplicatedEdges() {
+            logger.info("Detection of duplicated edges");
+            List<DuplicatedEdge> duplicates = DuplicatedEdgeFinder.findDuplicates(forkJoinPool, storage, edgeAttributes, wayIdStore);
+            try {
+                duplicatedEdgesWriter = new GeoJSONWriter(duplicatedEdgesPath);
+                duplicatedEdgesWriter.writeDuplicatedEdges(duplicates);
+                duplicatedEdgesWriter.close();
+            } catch (IOException e) {
+                logger.fatal(e);
+                System.exit(1);
+            }
+        }
+
         public void process() {
-            int nodes = storage.getNodes();
-            int lastLogId = 0;
-            final int logInterval = nodes / 8;
-            logger.info("Detection of unconnected roads: 0 of {}", nodes);
-            increment = 1000;
-            for (int startId = 0; startId < nodes; startId += increment) {
-                if (lastLogId + logInterval < startId) {
-                    logger.info("Detection of unconnected roads: {} of {}", startId, nodes);
-                    lastLogId = startId;
-                }
-                int count = increment;
-                if (startId + count > nodes) {
-                    count = nodes - startId;
+            if (packEdgeAttributes) {
+                logger.info("Decoding edge attributes");
+                edgeAttributes = new PackedEdgeAttributes(storage, encoder);
+            } else {
+                edgeAttributes = new EdgeAttributes(encoder);
+            }
+            nodeOrder = CandidateFilter.findCandidates(forkJoinPool, storage, nodeInfoStore);
+            checkpoint = new DetectionCheckpoint(nodeOrder.length, storage.getNodes(), storage.getAllEdges().length(),
+                    getCheckpointSettings());
+            int first = 0;
+            try {
+                DetectionCheckpoint resumeFrom = resume ? loadCheckpoint() : null;
+                if (resumeFrom == null) {
+                    // A checkpoint of an earlier run must not survive if this run fails early.
+                    Files.deleteIfExists(checkpointPath);
+                    writeDuplicatedEdges();
+                } else {
+                    logger.info("Duplicated edges were written completely before the checkpoint");
                 }
-                final MissingConnectionResult processingResult = new MissingConnectionResult();
-                results.add(processingResult);
-                OutputListener listener = new OutputListener() {
-                    @Override
-                    public void error(Exception ex) {
-                        lock.lock();
-                        try {
-                            logger.catching(ex);
-                            // If something failed, we go on the safe side and abort.
-                            System.exit(1);
-                        } finally {
-                            lock.unlock();
-                        }
-                    }
-    
-                    @Override
-                    public void complete(List<MissingConnection> decodedEntities, List<DuplicatedEdge> foundDuplicates) {
-                        lock.lock();
-                        try {
-                            processingResult.storeSuccessResult(decodedEntities, foundDuplicates);
-                            signalUpdate();
-    
-                        } finally {
-                            lock.unlock();
-                        }
-                    }
-                };
-                
-                UnconnectedFinder f = new UnconnectedFinder(hopper, encoder, maxDistance, storage,
-                        nodeInfoStore.getThreadSafeAccessor(), wayIdStore.getThreadSafeAccessor(), barriersHook, listener, startId,
-                        count, priorities, doRouting);
-                executorService.execute(f);
-                sendResultsToSink(threadCount - 1);
+                first = startDetection(resumeFrom);
+            } catch (IOException | IllegalStateException e) {
+                logger.fatal(e);
+                System.exit(1);
+            }
+            if (nodeLimit != null) {
+                calibrateNodeLimit();
+            }
+            if (useTileJoin) {
+                processTiles(first);
+            } else {
+                processRanges(first);
             }
             sendResultsToSink(0);
             try {
                 missingConnectionsWriter.close();
-                duplicatedEdgesWriter.close();
+                // The output is complete, there is nothing to resume.
+                Files.deleteIfExists(checkpointPath);
             } catch (IOException e) {
                 logger.fatal(e);
                 System.exit(1);
             }
             logger.info("finished writing");
+            logWorkerStatistics();
             // (Re-)Cancel if current thread also interrupted
-            executorService.shutdownNow();
+            forkJoinPool.shutdownNow();
         }
 
-        public void run() {
-            lock.lock();
+        /**
+         * Derive the adaptive node limit from the searches of every n-th candidate in ID order.
+         *
+         * The sample depends on the graph only and the searches use the maximum node limit,
+         * therefore the limits are the same in every run on the same graph. The results of the
+         * sample are discarded, the candidates are checked again by the detection.
+         */
+        private void calibrateNodeLimit() {
+            int stride = Math.max(1, nodeOrder.length / CALIBRATION_CANDIDATES);
+            int[] sample = new int[(nodeOrder.length + stride - 1) / stride];
+            for (int i = 0; i < sample.length; ++i) {
+                sample[i] = nodeOrder[i * stride];
+            }
+            logger.info("Calibrating the node limit with {} of {} candidates", sample.length, nodeOrder.length);
+            final OutputListener listener = new OutputListener() {
+                @Override
+                public void error(Exception ex) {
+                    throw new RuntimeException("Calibration of the node limit failed", ex);
+                }
+
+                @Override
+                public void complete(List<MissingConnection> results) {
+                }
+            };
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int start = 0; start < sample.length; start += CALIBRATION_RANGE) {
+                UnconnectedFinder finder = createFinder(listener, start, Math.min(CALIBRATION_RANGE, sample.length - start));
+                finder.setNodeOrder(sample);
+                tasks.add(forkJoinPool.submit(finder));
+            }
             try {
-                process();
-            } finally {
-                lock.unlock();
+                for (ForkJoinTask<?> task : tasks) {
+                    task.join();
+                }
+            } catch (RuntimeException e) {
+                logger.fatal(e);
+                System.exit(1);
+            }
+            nodeLimit.calibrate();
+            // The statistics logged at the end cover the detection only.
+            synchronized (allWorkerStates) {
+                for (FinderWorkerState state : allWorkerStates) {
+                    state.resetStatistics();
+                }
+            }
+            for (RoadClass roadClass : RoadClass.values()) {
+                if (nodeLimit.getLimit(roadClass) != MAX_NODES) {
+                    logger.info("Node limit of {}: {}", roadClass, nodeLimit.getLimit(roadClass));
+                }
+            }
+        }
+
+        /**
+         * Read the checkpoint of an earlier run and check that it matches this run.
+         *
+         * @return checkpoint or null if there is none
+         */
+        private DetectionCheckpoint loadCheckpoint() throws IOException {
+            DetectionCheckpoint resumeFrom = DetectionCheckpoint.load(checkpointPath);
+            if (resumeFrom == null) {
+                logger.info("No checkpoint found at {}, starting from the beginning", checkpointPath);
+                return null;
             }
-            
+            resumeFrom.checkResumable(checkpoint);
+            return resumeFrom;
         }
 
+        /**
+         * @param first position of the first candidate to process
+         */
+        private void processRanges(int first) {
+            int nodes = nodeOrder.length;
+            int lastLogId = first;
+            final int logInterval = nodes / 8;
+            if (hilbertOrder) {
+                logger.info("Sorting nodes along a Hilbert curve");
+                HilbertOrder.sortNodes(storage.getNodeAccess(), nodeOrder);
+            }
+            logger.info("Detection of unconnected roads: {} of {} candidates", first, nodes);
+            FinderTask.CostModel costModel = new FinderTask.CostModel(chunkNanos);
+            ThroughputTuner tuner = autoTune ? new ThroughputTuner(threadCount, chunkNanos) : null;
+            long phaseStart = System.nanoTime();
+            long phaseStartNodes = 0;
+            for (int startId = first; startId < nodes; startId += increment) {
+                if (lastLogId + logInterval < startId) {
+                    logger.info("Detection of unconnected roads: {} of {} candidates", startId, nodes);
+                    lastLogId = startId;
+                }
+                if (tuner != null && !tuner.isDone() && System.nanoTime() - phaseStart >= TUNING_PHASE_NANOS) {
+                    // Wait for all submitted ranges to measure the current setting only.
+                    sendResultsToSink(0);
+                    long now = System.nanoTime();
+                    double throughput = (costModel.getNodes() - phaseStartNodes) * 1e9 / (now - phaseStart);
+                    if (tuner.isWarmingUp()) {
+                        logger.info("Auto tuning: warm-up finished with {} nodes per second, the measurements start now",
+                                Math.round(throughput));
+                    } else {
+                        logger.info("Auto tuning: {} nodes per second with {} workers and a chunk time of {} ms (about {} nodes)",
+                                Math.round(throughput), tuner.getWorkers(), tuner.getTargetNanos() / 1e6,
+                                costModel.getTargetRangeSize());
+                    }
+                    tuner.record(throughput);
+                    setActiveWorkers(tuner.getWorkers());
+                    costModel.setTargetNanos(tuner.getTargetNanos());
+                    if (tuner.isDone()) {
+                        logger.info("Auto tuning finished: {} workers and a chunk time of {} ms, use --worker-threads {} --chunk-time {} to use them without tuning",
+                                tuner.getWorkers(), tuner.getTargetNanos() / 1e6, tuner.getWorkers(), tuner.getTargetNanos() / 1e6);
+                    }
+                    phaseStart = System.nanoTime();
+                    phaseStartNodes = costModel.getNodes();
+                }
+                int count = increment;
+                if (startId + count > nodes) {
+                    count = nodes - startId;
+                }
+                // Make room for the result of this chunk.
+                sendResultsToSink(results.length - 1);
+                // If something fails, we go on the safe side and abort when the result of this
+                // range is about to be written.
+                MissingConnectionResult processingResult = new MissingConnectionResult(startId + count);
+                addResult(processingResult);
+                forkJoinPool.execute(new FinderTask(this, costModel, startId, count, processingResult));
+            }
+            if (tuner != null && !tuner.isDone()) {
+                logger.info("Auto tuning did not finish before all candidates were submitted, last setting: {} workers and a chunk time of {} ms",
+                        tuner.getWorkers(), tuner.getTargetNanos() / 1e6);
+            }
+        }
+
+        /**
+         * Replace the pool by a pool with another number of workers. No tasks may be pending.
+         */
+        private void setActiveWorkers(int workers) {
+            if (workers == forkJoinPool.getParallelism()) {
+                return;
+            }
+            forkJoinPool.shutdown();
+            forkJoinPool = new ForkJoinPool(workers);
+        }
+
+        /**
+         * @param first position of the first candidate to process, has to be the first candidate
+         * of a tile
+         */
+        private void processTiles(int first) {
+            int nodes = nodeOrder.length;
+            // The tiles are searched with the full radius only.
+            searchRadii = null;
+            logger.info("Assigning edges to tiles");
+            tileJoin = new TileJoin(storage, maxDistance);
+            logger.info("{} assignments of edges to tiles, {} edges are checked by all tiles",
+                    tileJoin.getAssignmentCount(), tileJoin.getLargeEdgeCount());
+            int[] tileStarts = tileJoin.sortIntoTiles(nodeOrder);
+            int tiles = tileStarts.length - 1;
+            int lastLogId = first;
+            final int logInterval = nodes / 8;
+            int firstTile = 0;
+            while (tileStarts[firstTile] < first) {
+                ++firstTile;
+            }
+            if (tileStarts[firstTile] != first) {
+                throw new IllegalStateException("The checkpoint does not end at the border of a tile.");
+            }
+            logger.info("Detection of unconnected roads: {} of {} candidates in {} tiles", first, nodes, tiles);
+            while (firstTile < tiles) {
+                int startId = tileStarts[firstTile];
+                if (lastLogId + logInterval < startId) {
+                    logger.info("Detection of unconnected roads: {} of {} candidates", startId, nodes);
+                    lastLogId = startId;
+                }
+                // Submit whole tiles with about as many candidates as a range of node IDs.
+                int tileCount = 1;
+                while (firstTile + tileCount < tiles && tileStarts[firstTile + tileCount] - startId < increment) {
+                    ++tileCount;
+                }
+                sendResultsToSink(results.length - 1);
+                MissingConnectionResult processingResult = new MissingConnectionResult(tileStarts[firstTile + tileCount]);
+                addResult(processingResult);
+                forkJoinPool.execute(new TileJoinTask(this, tileStarts, firstTile, tileCount, processingResult));
+                firstTile += tileCount;
+            }
+        }
+
+        UnconnectedFinder createFinder(OutputListener listener, int startId, int count) {
+            UnconnectedFinder finder = new UnconnectedFinder(hopper, edgeAttributes, maxDistance, storage,
+                    nodeInfoStore.getThreadSafeAccessor(), barriersHook, listener, startId,
+                    count, priorities, doRouting, workerStates, chOracle, orientations);
+            finder.setNodeOrder(nodeOrder);
+            finder.setSearchRadii(searchRadii);
+            return finder;
+        }
+
+        /**
+         * Create a finder for the candidates of a tile. The candidates have to be sorted by
+         * {@link TileJoin#sortIntoTiles}.
+         */
+        UnconnectedFinder createTileFinder(OutputListener listener, int startId, int count) {
+            UnconnectedFinder finder = createFinder(listener, startId, count);
+            finder.setTile(tileJoin.loadTile(nodeOrder[startId]));
+            return finder;
+        }
+
+        public void run() {
+            process();
+        }
+
+        /**
+         * @param landmarks landmark distances for the routing, null if not available
+         * @param chOracle distance queries on a contraction hierarchy, null if not available
+         * @param orientations orientations of the edges at their tower nodes
+         */
         public void init(GraphHopperStorage graphHopperStorage, OsmIdAndNoExitStore infoStore, OsmIdStore wayIdStore, BarriersHook barriersHook,
-                boolean doRouting) {
+                boolean doRouting, final LandmarkStore landmarks, CHDistanceOracle chOracle,
+                EdgeOrientationStore orientations) {
             this.storage = graphHopperStorage;
             this.nodeInfoStore = infoStore;
             this.wayIdStore = wayIdStore;
             this.barriersHook = barriersHook;
             this.doRouting = doRouting;
+            this.chOracle = chOracle;
+            this.landmarkCount = landmarks == null ? 0 : landmarks.getLandmarkCount();
+            this.orientations = orientations;
+            // The contraction hierarchy does not use a node limit.
+            this.nodeLimit = adaptiveNodeLimit && chOracle == null ? new AdaptiveNodeLimit(MAX_NODES) : null;
+            this.workerStates = new ThreadLocal<FinderWorkerState>() {
+                @Override
+                protected FinderWorkerState initialValue() {
+                    DijkstraWithLimits dijkstra = new DijkstraWithLimits(storage, MAX_NODES, maxDistance);
+                    dijkstra.setGoalDirected(goalDirected);
+                    dijkstra.setLandmarks(landmarks);
+                    ConstrainedLocationIndex index = (ConstrainedLocationIndex) hopper.getLocationIndex();
+                    int radiusCount = searchRadii == null ? 0 : searchRadii.length;
+                    FinderWorkerState state = new FinderWorkerState(storage, index, dijkstra, nodeLimit, radiusCount);
+                    allWorkerStates.add(state);
+                    return state;
+                }
+            };
+        }
+
+        /**
+         * Skip nodes of routing requests which cannot be part of a path shorter than the maximum
+         * distance, see {@link DijkstraWithLimits}. These nodes do not count towards the node
+         * limit any more. Requests which ended at the node limit may therefore find a path and
+         * change the detour ratio of the result.
+         */
+        public void setGoalDirected(boolean goalDirected) {
+            this.goalDirected = goalDirected;
+        }
+
+        /**
+         * Let the node limit of routing requests adapt to the search space observed on a fixed
+         * sample of candidates before the detection, see {@link AdaptiveNodeLimit}.
+         */
+        public void setAdaptiveNodeLimit(boolean adaptiveNodeLimit) {
+            this.adaptiveNodeLimit = adaptiveNodeLimit;
+        }
+
+        /**
+         * Process the nodes in the order of a Hilbert curve instead of the order of their IDs.
+         *
+         * Neighbouring nodes are processed by the same worker at the same time which improves the
+         * cache locality of the location index and graph lookups. The output is written in the
+         * order of the curve. It does not depend on the number of workers.
+         */
+        public void setHilbertOrder(boolean hilbertOrder) {
+            this.hilbertOrder = hilbertOrder;
+        }
+
+        /**
+         * Search a small radius around each open end first and double it until a candidate is
+         * found or the maximum distance is reached. The results do not change.
+         */
+        public void setRadiusEscalation(boolean radiusEscalation) {
+            if (!radiusEscalation) {
+                searchRadii = null;
+                return;
+            }
+            searchRadii = new double[RADIUS_STEPS];
+            for (int i = 0; i < RADIUS_STEPS; ++i) {
+                searchRadii[i] = maxDistance / (1 << (RADIUS_STEPS - 1 - i));
+            }
+        }
+
+        /**
+         * Decode the attributes of all edges once before the detection instead of decoding them
+         * from the edge flags on every access. This needs two bytes per edge.
+         */
+        public void setPackEdgeAttributes(boolean packEdgeAttributes) {
+            this.packEdgeAttributes = packEdgeAttributes;
+        }
+
+        /**
+         * Set the target duration of the search of a range of nodes which is not split any
+         * further. It determines the chunk size of the detection.
+         */
+        public void setChunkTime(double millis) {
+            this.chunkNanos = Math.max(1, Math.round(millis * 1e6));
+        }
+
+        /**
+         * Continue the detection of unconnected roads from the checkpoint in the output directory
+         * instead of starting from the beginning.
+         */
+        public void setResume(boolean resume) {
+            this.resume = resume;
+        }
+
+        /**
+         * Measure the throughput of the detection during the first minutes and adjust the number
+         * of workers and the chunk time. The number of workers passed to the constructor is the
+         * maximum. Auto tuning is not used with the tile join.
+         */
+        public void setAutoTune(boolean autoTune) {
+            this.autoTune = autoTune;
+        }
+
+        /**
+         * Find the closest edges of the candidates by a join of tiles of candidates and edges
+         * instead of one location index lookup per candidate.
+         *
+         * The candidates are processed tile by tile, the order of the output follows the tiles.
+         * Hilbert order and radius escalation do not apply.
+         */
+        public void setTileJoin(boolean useTileJoin) {
+            this.useTileJoin = useTileJoin;
+        }
+
+        private void logWorkerStatistics() {
+            SearchStatistics statistics = new SearchStatistics();
+            long allocatedBytes = 0;
+            long processedNodes = 0;
+            long cacheHits = 0;
+            long cacheMisses = 0;
+            long[] radiusSteps = new long[searchRadii == null ? 1 : searchRadii.length + 1];
+            synchronized (allWorkerStates) {
+                for (FinderWorkerState state : allWorkerStates) {
+                    statistics.merge(state.getStatistics());
+                    long[] stateSteps = state.getRadiusSteps();
+                    for (int i = 0; i < stateSteps.length; ++i) {
+                        radiusSteps[i] += stateSteps[i];
+                    }
+                    allocatedBytes += state.getAllocatedBytes();
+                    processedNodes += state.getProcessedNodes();
+                    EdgeDistanceCache edgeCache = state.getDijkstra().getEdgeDistanceCache();
+                    cacheHits += edgeCache.getHits();
+                    cacheMisses += edgeCache.getMisses();
+                }
+            }
+            if (processedNodes > 0) {
+                logger.info("Workers allocated {} bytes for {} nodes ({} bytes per node)", allocatedBytes, processedNodes,
+                        allocatedBytes / processedNodes);
+            }
+            if (cacheHits + cacheMisses > 0) {
+                logger.info("Edge geometry cache: {} hits, {} misses ({}% hits)", cacheHits, cacheMisses,
+                        100 * cacheHits / (cacheHits + cacheMisses));
+            }
+            if (searchRadii != null) {
+                for (int i = 0; i < searchRadii.length; ++i) {
+                    logger.info("Location index queries stopped at radius {} m: {}", searchRadii[i], radiusSteps[i]);
+                }
+                logger.info("Location index queries without result: {}", radiusSteps[searchRadii.length]);
+            }
+            if (doRouting) {
+                statistics.log(logger);
+            }
         }
 
 }
@@ -0,0 +1,72 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Parameters;
+
+/**
+ * Distances on the graph answered by queries on a contraction hierarchy.
+ *
+ * The contraction hierarchy has to be prepared with a weighting which uses the length of the
+ * edges as weight (shortest weighting). It does not renumber nodes or edges of the base graph,
+ * therefore node and edge IDs of the base graph can be used for queries.
+ *
+ * Each query creates its own algorithm instance. Instances of this class can be shared by
+ * multiple threads.
+ */
+public class CHDistanceOracle {
+
+    private final CHGraph chGraph;
+    private final PrepareContractionHierarchies preparation;
+    private final AlgorithmOptions options;
+    private final double maxDistance;
+
+    public CHDistanceOracle(GraphHopperStorage storage, PrepareContractionHierarchies preparation, double maxDistance) {
+        this.preparation = preparation;
+        this.chGraph = storage.getGraph(CHGraph.class, preparation.getWeighting());
+        this.options = AlgorithmOptions.start()
+                .algorithm(Parameters.Algorithms.DIJKSTRA_BI)
+                .traversalMode(TraversalMode.NODE_BASED)
+                .weighting(preparation.getWeighting())
+                .build();
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Get the distance between two nodes.
+     *
+     * @return distance or the maximum distance if there is no path or it is longer
+     */
+    public double route(int fromNodeId, int toNodeId) {
+        if (fromNodeId == toNodeId) {
+            return 0;
+        }
+        RoutingAlgorithm algo = preparation.createAlgo(chGraph, options);
+        Path path = algo.calcPath(fromNodeId, toNodeId);
+        if (!path.isFound() || path.getDistance() > maxDistance) {
+            return maxDistance;
+        }
+        return path.getDistance();
+    }
+
+    /**
+     * Get the distance from a node to a location on an edge.
+     *
+     * @param fromNodeId start node
+     * @param edge edge of the location
+     * @param offsets distance from the base node (index 0) and from the adjacent node (index 1) of
+     * the edge to the location, see {@link DijkstraWithLimits#distancesAlongEdge}
+     * @return distance or the maximum distance if there is no path or it is longer
+     */
+    public double routeToPoint(int fromNodeId, EdgeIteratorState edge, double[] offsets) {
+        double viaBase = route(fromNodeId, edge.getBaseNode()) + offsets[0];
+        double viaAdj = route(fromNodeId, edge.getAdjNode()) + offsets[1];
+        return Math.min(maxDistance, Math.min(viaBase, viaAdj));
+    }
+}
@@ -0,0 +1,183 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import java.util.Arrays;
+
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+
+/**
+ * Reusable state of a limited Dijkstra search.
+ *
+ * Reached nodes are stored in slots (primitive arrays for distance, parent and visited flag).
+ * The mapping from node IDs to slots is an open addressing hash table whose buckets carry a
+ * version stamp. A bucket is only valid if its stamp matches the current version, therefore
+ * resetting the state for the next search does not need to touch the arrays.
+ *
+ * Instances are not thread-safe. Use one instance per worker thread.
+ */
+public class DijkstraSearchContext {
+
+    private final EdgeExplorer explorer;
+    private final IntDoubleBinaryHeap queue;
+
+    // hash table node ID -> slot
+    private int[] bucketNodes;
+    private int[] bucketSlots;
+    private int[] bucketStamps;
+    private int mask;
+    private int stamp;
+
+    // slots
+    private int[] slotNodes;
+    private double[] slotDistances;
+    private int[] slotParents;
+    private boolean[] slotVisited;
+    private int slotCount;
+
+    public DijkstraSearchContext(Graph graph, int expectedNodes) {
+        this.explorer = graph.createEdgeExplorer();
+        int slots = Math.max(16, expectedNodes);
+        this.queue = new IntDoubleBinaryHeap(slots);
+        this.slotNodes = new int[slots];
+        this.slotDistances = new double[slots];
+        this.slotParents = new int[slots];
+        this.slotVisited = new boolean[slots];
+        initTable(tableSizeFor(slots));
+        this.stamp = 1;
+        this.slotCount = 0;
+    }
+
+    private static int tableSizeFor(int slots) {
+        // keep load factor at or below 0.5
+        return Integer.highestOneBit(Math.max(2, slots) - 1) << 2;
+    }
+
+    private void initTable(int size) {
+        bucketNodes = new int[size];
+        bucketSlots = new int[size];
+        bucketStamps = new int[size];
+        mask = size - 1;
+    }
+
+    private static int hash(int node) {
+        int h = node * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public EdgeExplorer getExplorer() {
+        return explorer;
+    }
+
+    /**
+     * Get the priority queue of slots of this search.
+     */
+    public IntDoubleBinaryHeap getQueue() {
+        return queue;
+    }
+
+    /**
+     * Forget all reached nodes. This does not allocate or clear any array.
+     */
+    public void reset() {
+        ++stamp;
+        if (stamp == Integer.MAX_VALUE) {
+            // stamp overflow, clear the table for real
+            Arrays.fill(bucketStamps, 0);
+            stamp = 1;
+        }
+        slotCount = 0;
+        queue.clear();
+    }
+
+    /**
+     * Number of nodes reached since the last reset.
+     */
+    public int size() {
+        return slotCount;
+    }
+
+    /**
+     * Get the slot of a node.
+     *
+     * @return slot or -1 if the node was not reached yet.
+     */
+    public int getSlot(int node) {
+        int bucket = hash(node) & mask;
+        while (bucketStamps[bucket] == stamp) {
+            if (bucketNodes[bucket] == node) {
+                return bucketSlots[bucket];
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Add a node which has not been reached before.
+     *
+     * @return slot of the node
+     */
+    public int addNode(int node, double distance, int parentNode) {
+        if (slotCount == slotNodes.length) {
+            growSlots();
+        }
+        int slot = slotCount;
+        ++slotCount;
+        slotNodes[slot] = node;
+        slotDistances[slot] = distance;
+        slotParents[slot] = parentNode;
+        slotVisited[slot] = false;
+        insertIntoTable(node, slot);
+        return slot;
+    }
+
+    private void insertIntoTable(int node, int slot) {
+        int bucket = hash(node) & mask;
+        while (bucketStamps[bucket] == stamp) {
+            bucket = (bucket + 1) & mask;
+        }
+        bucketStamps[bucket] = stamp;
+        bucketNodes[bucket] = node;
+        bucketSlots[bucket] = slot;
+    }
+
+    private void growSlots() {
+        int newLength = 2 * slotNodes.length;
+        slotNodes = Arrays.copyOf(slotNodes, newLength);
+        slotDistances = Arrays.copyOf(slotDistances, newLength);
+        slotParents = Arrays.copyOf(slotParents, newLength);
+        slotVisited = Arrays.copyOf(slotVisited, newLength);
+        if (tableSizeFor(newLength) > bucketNodes.length) {
+            initTable(tableSizeFor(newLength));
+            stamp = 1;
+            for (int slot = 0; slot < slotCount; ++slot) {
+                insertIntoTable(slotNodes[slot], slot);
+            }
+        }
+    }
+
+    public int getNode(int slot) {
+        return slotNodes[slot];
+    }
+
+    public double getDistance(int slot) {
+        return slotDistances[slot];
+    }
+
+    public int getParentNode(int slot) {
+        return slotParents[slot];
+    }
+
+    public boolean isVisited(int slot) {
+        return slotVisited[slot];
+    }
+
+    public void setVisited(int slot) {
+        slotVisited[slot] = true;
+    }
+
+    public void update(int slot, double distance, int parentNode) {
+        slotDistances[slot] = distance;
+        slotParents[slot] = parentNode;
+    }
+}
@@ -1,7 +1,5 @@
 package de.geofabrik.osmi_routing.algorithm;
 
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
-import com.graphhopper.coll.GHIntObjectHashMap;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistancePlaneProjection;
@@ -15,22 +13,21 @@ import com.graphhopper.util.shapes.GHPoint;
  * Simplified implementation of Dijkstra's algorithm.
  * 
  * This implementation aborts if the maximum distance is reached or the maximum number of nodes is reached.
+ *
+ * The search state is kept in a {@link DijkstraSearchContext} which is reused by all searches of
+ * this instance. Therefore, instances are not thread-safe. Use one instance per worker thread.
+ *
+ * In goal-directed mode, the searches use the beeline distance to the target as lower bound of
+ * the remaining distance. Nodes which cannot be part of a path shorter than the maximum distance
+ * are not added to the queue and the unidirectional searches are ordered by the sum of the
+ * distance and the lower bound (A*). Paths which are too long are therefore detected before the
+ * node limit is reached. If landmark distances ({@link LandmarkStore}) are available, they
+ * tighten the lower bound.
  * @author Michael Reichert
  *
  */
 public class DijkstraWithLimits {
 
-    protected class DijkstraNodeInfo {
-        public double distance = 0;
-        public int baseNode = -1;
-        public boolean visited = false;
-
-        public DijkstraNodeInfo(double distance, int baseNode) {
-            this.distance = distance;
-            this.baseNode = baseNode;
-        }
-    }
-
     public enum Status {
         OK, TOO_LONG, TOO_MANY_NODES;
     }
@@ -49,18 +46,100 @@ public class DijkstraWithLimits {
     int maxNodes;
     double maxDistance;
     DistanceCalc distCalc;
+    private DijkstraSearchContext context;
+    private DijkstraSearchContext backwardContext;
+    // targets and results of searches to both ends of an edge
+    private int[] edgeEnds = new int[2];
+    private Result[] edgeEndResults = new Result[2];
+    // start nodes and their offsets of the backward search of bidirectional searches
+    private int[] backwardStarts = new int[2];
+    private double[] backwardOffsets = new double[2];
+    private EdgeDistanceCache edgeCache;
+    private boolean goalDirected = false;
+    // statistics of the last search
+    private int settledNodes = 0;
+    private int relaxedEdges = 0;
+    private boolean lastSearchBidirectional = false;
+    private DistanceLowerBound forwardBound;
+    private DistanceLowerBound backwardBound;
 
     public DijkstraWithLimits(GraphHopperStorage storage, int maxNodes, double maxDistance, DistanceCalc distCalc) {
         this.storage = storage;
         this.maxNodes = maxNodes;
         this.maxDistance = maxDistance;
         this.distCalc = distCalc;
+        this.context = new DijkstraSearchContext(storage, maxNodes + 16);
+        this.backwardContext = new DijkstraSearchContext(storage, maxNodes + 16);
+        this.edgeCache = new EdgeDistanceCache(distCalc, 1024);
+        this.forwardBound = new DistanceLowerBound(storage.getNodeAccess(), distCalc);
+        this.backwardBound = new DistanceLowerBound(storage.getNodeAccess(), distCalc);
     }
 
     public DijkstraWithLimits(GraphHopperStorage storage, int maxNodes, double maxDistance) {
         this(storage, maxNodes, maxDistance, new DistancePlaneProjection());
     }
 
+    /**
+     * Enable or disable the goal-directed mode (disabled by default).
+     */
+    public void setGoalDirected(boolean goalDirected) {
+        this.goalDirected = goalDirected;
+    }
+
+    public boolean isGoalDirected() {
+        return goalDirected;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Change the maximum number of nodes a search may reach. The search state grows if
+     * necessary.
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    private void startSearch(boolean bidirectional) {
+        settledNodes = 0;
+        relaxedEdges = 0;
+        lastSearchBidirectional = bidirectional;
+    }
+
+    /**
+     * Number of nodes settled by the last search.
+     */
+    public int getSettledNodes() {
+        return settledNodes;
+    }
+
+    /**
+     * Number of edges looked at by the last search.
+     */
+    public int getRelaxedEdges() {
+        return relaxedEdges;
+    }
+
+    /**
+     * Number of nodes reached by the last search. This is the number the node limit applies to.
+     */
+    public int getReachedNodes() {
+        return context.size() + (lastSearchBidirectional ? backwardContext.size() : 0);
+    }
+
+    /**
+     * Use landmark distances in addition to the beeline distance as lower bound in goal-directed
+     * mode.
+     *
+     * @param landmarks landmark distances or null to use the beeline distance only
+     */
+    public void setLandmarks(LandmarkStore landmarks) {
+        forwardBound.setLandmarks(landmarks);
+        backwardBound.setLandmarks(landmarks);
+    }
+
     double distanceOnEdge(PointList points, GHPoint location) {
         double distance = 0;
         final double EPSILON = 0.0000001;
@@ -77,14 +156,53 @@ public class DijkstraWithLimits {
         return distance;
     }
 
-    public int lowerNeighbourPillars(PointList allPoints, GHPoint point) {
+    /**
+     * Get the distance along an edge from its base node or its adjacent node to a point of its
+     * geometry.
+     *
+     * This is equivalent to calling {@link #distanceOnEdge(PointList, GHPoint)} with the geometry
+     * of the edge (reversed if fromAdjNode is true) but uses the cached cumulative distances of
+     * the edge. If the location is not a point of the geometry, the length of the edge is
+     * returned.
+     */
+    double distanceOnEdge(EdgeIteratorState edge, GHPoint location, boolean fromAdjNode) {
+        final double EPSILON = 0.0000001;
+        int slot = edgeCache.load(edge);
+        int size = edgeCache.getSize(slot);
+        for (int j = 0; j < size - 1; ++j) {
+            int i = fromAdjNode ? size - 1 - j : j;
+            if (Math.abs(edgeCache.getLat(slot, i) - location.lat) < EPSILON && Math.abs(edgeCache.getLon(slot, i) - location.lon) < EPSILON) {
+                double offset = edgeCache.getOffset(slot, i);
+                return fromAdjNode ? edgeCache.getLength(slot) - offset : offset;
+            }
+        }
+        return edgeCache.getLength(slot);
+    }
+
+    public EdgeDistanceCache getEdgeDistanceCache() {
+        return edgeCache;
+    }
+
+    /**
+     * Find the segment of the geometry of an edge (including the tower nodes) which contains a
+     * point.
+     *
+     * @return index of the first point of the segment or -1 if no segment matches
+     */
+    public int lowerNeighbourPillars(EdgeIteratorState edge, GHPoint point) {
+        int slot = edgeCache.load(edge);
+        int size = edgeCache.getSize(slot);
         int matchingI = -1;
         double mMin = Double.MAX_VALUE;
-        for (int i = 0; i < allPoints.size() - 1; ++i) {
-            double minLat = Math.min(allPoints.getLat(i), allPoints.getLat(i + 1));
-            double maxLat = Math.max(allPoints.getLat(i), allPoints.getLat(i + 1));
-            double minLon = Math.min(allPoints.getLon(i), allPoints.getLon(i + 1));
-            double maxLon = Math.max(allPoints.getLon(i), allPoints.getLon(i + 1));
+        for (int i = 0; i < size - 1; ++i) {
+            double lat1 = edgeCache.getLat(slot, i);
+            double lon1 = edgeCache.getLon(slot, i);
+            double lat2 = edgeCache.getLat(slot, i + 1);
+            double lon2 = edgeCache.getLon(slot, i + 1);
+            double minLat = Math.min(lat1, lat2);
+            double maxLat = Math.max(lat1, lat2);
+            double minLon = Math.min(lon1, lon2);
+            double maxLon = Math.max(lon1, lon2);
             if (point.getLat() < minLat || point.getLat() > maxLat
                     || point.getLon() < minLon || point.getLon() > maxLon) {
                 continue;
@@ -94,12 +212,12 @@ public class DijkstraWithLimits {
             // First check if the matching edge segment goes straightly or almost straightly in north-south direction.
             if (maxLon - minLon < 0.0000005) {
                 // almost north-south, work with inverse value: dx/dy
-                mExpected = (allPoints.getLon(i + 1) - allPoints.getLon(i)) / (allPoints.getLat(i + 1) - allPoints.getLat(i));
-                mThis = (allPoints.getLon(i + 1) - point.getLon()) / (allPoints.getLat(i + 1) - point.getLat());
+                mExpected = (lon2 - lon1) / (lat2 - lat1);
+                mThis = (lon2 - point.getLon()) / (lat2 - point.getLat());
             } else {
                 // all other cases: dy/dx
-                mExpected = (allPoints.getLat(i + 1) - allPoints.getLat(i)) / (allPoints.getLon(i + 1) - allPoints.getLon(i));
-                mThis = (allPoints.getLat(i + 1) - point.getLat()) / (allPoints.getLon(i + 1) - point.getLon());
+                mExpected = (lat2 - lat1) / (lon2 - lon1);
+                mThis = (lat2 - point.getLat()) / (lon2 - point.getLon());
             }
             if (Math.abs(mExpected - mThis) < mMin) {
                 matchingI = i;
@@ -110,102 +228,448 @@ public class DijkstraWithLimits {
 
     public Result routeBetweenPillars(int fromNodeId, EdgeIteratorState destinationEdge, GHPoint destinationLocation) {
         // find neighbour pillars first
-        PointList geometry = destinationEdge.fetchWayGeometry(3);
-        int neighbour1Index = lowerNeighbourPillars(geometry, destinationLocation);
-        GHPoint neighbour1 = geometry.toGHPoint(neighbour1Index);
-        GHPoint neighbour2 = geometry.toGHPoint(neighbour1Index + 1);
+        int neighbour1Index = lowerNeighbourPillars(destinationEdge, destinationLocation);
+        int slot = edgeCache.load(destinationEdge);
+        int size = edgeCache.getSize(slot);
         // get distance to these neighbours
-        double distanceTo1 = distCalc.calcDist(neighbour1.lat, neighbour1.lon, destinationLocation.lat, destinationLocation.lon);
-        double distanceTo2 = distCalc.calcDist(neighbour2.lat, neighbour2.lon, destinationLocation.lat, destinationLocation.lon);
+        double distanceTo1 = distCalc.calcDist(edgeCache.getLat(slot, neighbour1Index), edgeCache.getLon(slot, neighbour1Index),
+                destinationLocation.lat, destinationLocation.lon);
+        double distanceTo2 = distCalc.calcDist(edgeCache.getLat(slot, neighbour1Index + 1), edgeCache.getLon(slot, neighbour1Index + 1),
+                destinationLocation.lat, destinationLocation.lon);
         // get distance from these neighbours to the base/adjacent node
-        double distanceOnEdge1 = (neighbour1Index == 0) ? 0 : distanceOnEdge(geometry, destinationLocation);
-        geometry.reverse();
-        double distanceOnEdge2 = (neighbour1Index == geometry.size() - 1) ? 0 : distanceOnEdge(geometry, destinationLocation);
+        double distanceOnEdge1 = (neighbour1Index == 0) ? 0 : distanceOnEdge(destinationEdge, destinationLocation, false);
+        double distanceOnEdge2 = (neighbour1Index == size - 1) ? 0 : distanceOnEdge(destinationEdge, destinationLocation, true);
         // get distance from start of our routing request to base and adjacent node of the destination edge
-        Result graphToBase = route(fromNodeId, destinationEdge.getBaseNode());
-        Result graphToAdj = route(fromNodeId, destinationEdge.getAdjNode());
+        routeToEdgeEnds(fromNodeId, destinationEdge);
+        Result graphToBase = edgeEndResults[0];
+        Result graphToAdj = edgeEndResults[1];
         double totalDistance1 = graphToBase.distance + distanceTo1 + distanceOnEdge1;
         double totalDistance2 = graphToAdj.distance + distanceTo2 + distanceOnEdge2;
         if (graphToBase.status != Status.OK || totalDistance1 > totalDistance2) {
-            graphToAdj.distance = totalDistance2;
-            return graphToAdj;
+            return new Result(graphToAdj.status, totalDistance2);
         }
-        graphToBase.distance = totalDistance1;
-        return graphToBase;
+        return new Result(graphToBase.status, totalDistance1);
     }
 
     public Result routeToPillar(int fromNodeId, EdgeIteratorState destinationEdge, GHPoint destinationLocation) {
         // get route to either base or adjacent node of the destination edge
-        Result resultToBase = route(fromNodeId, destinationEdge.getBaseNode());
-        Result resultToAdj = route(fromNodeId, destinationEdge.getAdjNode());
+        routeToEdgeEnds(fromNodeId, destinationEdge);
+        Result resultToBase = edgeEndResults[0];
+        Result resultToAdj = edgeEndResults[1];
         if (resultToBase.status != Status.OK && resultToAdj.status != Status.OK){
-            return resultToBase;
+            return new Result(resultToBase.status, resultToBase.distance);
         }
         // Get distance from destination pillar node to both base and adjacent node.
         double distanceToBase = Double.MAX_VALUE;
         double distanceToAdj = Double.MAX_VALUE;
         if (resultToBase.status == Status.OK) {
-            distanceToBase = distanceOnEdge(destinationEdge.fetchWayGeometry(3), destinationLocation);
+            distanceToBase = distanceOnEdge(destinationEdge, destinationLocation, false);
         }
-        EdgeIteratorState destinationEdgeReverse = storage.getEdgeIteratorState(destinationEdge.getEdge(), destinationEdge.getBaseNode());
         if (resultToAdj.status == Status.OK) {
-            distanceToAdj = distanceOnEdge(destinationEdgeReverse.fetchWayGeometry(3), destinationLocation);
+            distanceToAdj = distanceOnEdge(destinationEdge, destinationLocation, true);
         }
         if (distanceToBase < distanceToAdj) {
-            resultToBase.distance += distanceToBase;
-            return resultToBase;
+            return new Result(resultToBase.status, resultToBase.distance + distanceToBase);
+        }
+        return new Result(resultToAdj.status, resultToAdj.distance + distanceToAdj);
+    }
+
+    /**
+     * Search from a node to the base and the adjacent node of an edge in a single search.
+     *
+     * The results are written to edgeEndResults.
+     */
+    private void routeToEdgeEnds(int fromNodeId, EdgeIteratorState destinationEdge) {
+        edgeEnds[0] = destinationEdge.getBaseNode();
+        edgeEnds[1] = destinationEdge.getAdjNode();
+        routeToMany(fromNodeId, edgeEnds, edgeEnds.length, edgeEndResults);
+    }
+
+    private static boolean contains(int[] nodes, int count, int node) {
+        for (int i = 0; i < count; ++i) {
+            if (nodes[i] == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Search from one node to multiple nodes at once.
+     *
+     * The search stops as soon as all targets have been reached or if one of the limits is hit.
+     * The distance of a target is the shortest distance known when the search stops. Targets
+     * which were not reached get the status which ended the search and the maximum distance.
+     * Like {@link #route(int, int)}, the start node itself is never reported as reached.
+     *
+     * @param fromNodeId start node
+     * @param toNodeIds target nodes, the first toNodeCount entries are used
+     * @param toNodeCount number of target nodes
+     * @param results receives one result per target node, existing Result objects are reused
+     */
+    public void routeToMany(int fromNodeId, int[] toNodeIds, int toNodeCount, Result[] results) {
+        DijkstraSearchContext context = this.context;
+        IntDoubleBinaryHeap queue = context.getQueue();
+        EdgeExplorer explorer = context.getExplorer();
+        startSearch(false);
+        context.reset();
+        DistanceLowerBound bound = null;
+        if (goalDirected) {
+            bound = forwardBound;
+            bound.clear();
+            for (int i = 0; i < toNodeCount; ++i) {
+                bound.addTarget(toNodeIds[i], 0);
+            }
+        }
+        queue.push(context.addNode(fromNodeId, 0, -1), estimate(bound, fromNodeId, 0));
+        // Count distinct targets. If the start node is a target, the search runs until it hits a
+        // limit because the start node is never reached.
+        int missing = 0;
+        for (int i = 0; i < toNodeCount; ++i) {
+            if (!contains(toNodeIds, i, toNodeIds[i])) {
+                ++missing;
+            }
+        }
+        Status status = Status.OK;
+
+        while (missing > 0) {
+            if (context.size() >= maxNodes) {
+                status = Status.TOO_MANY_NODES;
+                break;
+            }
+            // Get node with smallest key, skip outdated queue entries. The valid entry of a node
+            // has a smaller key than its outdated ones, the node is visited when they are polled.
+            int slot = -1;
+            double key = Double.POSITIVE_INFINITY;
+            while (!queue.isEmpty()) {
+                key = queue.peekKey();
+                slot = queue.poll();
+                if (!context.isVisited(slot)) {
+                    break;
+                }
+                slot = -1;
+            }
+            if (slot == -1 || key > maxDistance) {
+                status = Status.TOO_LONG;
+                break;
+            }
+            double shortestDistance = context.getDistance(slot);
+            int baseNode = context.getNode(slot);
+            context.setVisited(slot);
+            ++settledNodes;
+            EdgeIterator adjIter = explorer.setBaseNode(baseNode);
+            while (adjIter.next()) {
+                ++relaxedEdges;
+                int adj = adjIter.getAdjNode();
+                int adjSlot = context.getSlot(adj);
+                if (adjSlot != -1 && context.isVisited(adjSlot)) {
+                    continue;
+                }
+                double newDistance = shortestDistance + adjIter.getDistance();
+                if (adjSlot != -1 && context.getDistance(adjSlot) <= newDistance) {
+                    continue;
+                }
+                double newKey = estimate(bound, adj, newDistance);
+                if (bound != null && newKey > maxDistance) {
+                    continue;
+                }
+                if (adjSlot == -1) {
+                    adjSlot = context.addNode(adj, newDistance, baseNode);
+                    if (contains(toNodeIds, toNodeCount, adj)) {
+                        --missing;
+                    }
+                } else {
+                    context.update(adjSlot, newDistance, baseNode);
+                }
+                queue.push(adjSlot, newKey);
+            }
+        }
+        for (int i = 0; i < toNodeCount; ++i) {
+            int slot = context.getSlot(toNodeIds[i]);
+            Status targetStatus = status;
+            double distance = maxDistance;
+            if (slot != -1 && toNodeIds[i] != fromNodeId) {
+                targetStatus = Status.OK;
+                distance = context.getDistance(slot);
+            }
+            if (results[i] == null) {
+                results[i] = new Result(targetStatus, distance);
+            } else {
+                results[i].status = targetStatus;
+                results[i].distance = distance;
+            }
         }
-        resultToAdj.distance += distanceToAdj;
-        return resultToAdj;
     }
 
     public Result route(int fromNodeId, int toNodeId) {
-        GHIntObjectHashMap<DijkstraNodeInfo> nodeInfo = new GHIntObjectHashMap<DijkstraNodeInfo>(100);
-        EdgeExplorer explorer = storage.createEdgeExplorer();
-        nodeInfo.put(fromNodeId, new DijkstraNodeInfo(0, -1));
-        EdgeIterator adjIter = explorer.setBaseNode(fromNodeId);
-
-        while (nodeInfo.size() < maxNodes) {
-            // get node with shortest distance
-            int baseNode = -1;
-            double shortestDistance = Double.MAX_VALUE;
-            DijkstraNodeInfo info = null;
-            for (IntObjectCursor<DijkstraNodeInfo> dni : nodeInfo) {
-                if (dni.value.distance <= shortestDistance && !dni.value.visited) {
-                    baseNode = dni.key;
-                    shortestDistance = dni.value.distance;
-                    info = dni.value;
+        DijkstraSearchContext context = this.context;
+        IntDoubleBinaryHeap queue = context.getQueue();
+        EdgeExplorer explorer = context.getExplorer();
+        startSearch(false);
+        context.reset();
+        DistanceLowerBound bound = null;
+        if (goalDirected) {
+            bound = forwardBound;
+            bound.clear();
+            bound.addTarget(toNodeId, 0);
+        }
+        queue.push(context.addNode(fromNodeId, 0, -1), estimate(bound, fromNodeId, 0));
+
+        while (context.size() < maxNodes) {
+            // Get node with smallest key, skip outdated queue entries. The valid entry of a node
+            // has a smaller key than its outdated ones, the node is visited when they are polled.
+            int slot = -1;
+            double key = Double.POSITIVE_INFINITY;
+            while (!queue.isEmpty()) {
+                key = queue.peekKey();
+                slot = queue.poll();
+                if (!context.isVisited(slot)) {
+                    break;
                 }
+                slot = -1;
             }
-            if (shortestDistance > maxDistance) {
+            if (slot == -1 || key > maxDistance) {
                 return new Result(Status.TOO_LONG, maxDistance);
             }
+            double shortestDistance = context.getDistance(slot);
+            int baseNode = context.getNode(slot);
             // mark as visited
-            info.visited = true;
+            context.setVisited(slot);
+            ++settledNodes;
             // visit all neighbour nodes of this node
-            adjIter = explorer.setBaseNode(baseNode);
+            EdgeIterator adjIter = explorer.setBaseNode(baseNode);
             while (adjIter.next()) {
+                ++relaxedEdges;
                 int adj = adjIter.getAdjNode();
-                DijkstraNodeInfo adjInfo = nodeInfo.get(adj);
-                if (adjInfo != null && adjInfo.visited) {
+                int adjSlot = context.getSlot(adj);
+                if (adjSlot != -1 && context.isVisited(adjSlot)) {
                     continue;
                 }
-                double thisDist = adjIter.getDistance();
+                double newDistance = shortestDistance + adjIter.getDistance();
                 if (toNodeId == adj) {
-                    return new Result(Status.OK, shortestDistance + thisDist);
+                    return new Result(Status.OK, newDistance);
+                }
+                if (adjSlot != -1 && context.getDistance(adjSlot) <= newDistance) {
+                    continue;
+                }
+                double newKey = estimate(bound, adj, newDistance);
+                if (bound != null && newKey > maxDistance) {
+                    // cannot be part of a path which is short enough
+                    continue;
                 }
-                if (adjInfo == null) {
-                    nodeInfo.put(
-                        adj,
-                        new DijkstraNodeInfo(shortestDistance + thisDist, baseNode)
-                    );
-                } else if (adjInfo.distance > shortestDistance + thisDist) {
-                    // update distance if required
-                    adjInfo.baseNode = baseNode;
-                    nodeInfo.put(adj, adjInfo);
+                if (adjSlot == -1) {
+                    adjSlot = context.addNode(adj, newDistance, baseNode);
+                } else {
+                    // update distance, the old queue entry becomes outdated
+                    context.update(adjSlot, newDistance, baseNode);
                 }
+                queue.push(adjSlot, newKey);
             }
         }
         return new Result(Status.TOO_MANY_NODES, maxDistance);
     }
+
+    /**
+     * Get the distances along an edge from its base node and from its adjacent node to a
+     * location on the edge.
+     *
+     * @param edge edge
+     * @param location location on the edge, e.g. a snapped point
+     * @param offsets receives the distance from the base node (index 0) and from the adjacent
+     * node (index 1)
+     */
+    public void distancesAlongEdge(EdgeIteratorState edge, GHPoint location, double[] offsets) {
+        int slot = edgeCache.load(edge);
+        double offset = 0;
+        double minDetour = Double.MAX_VALUE;
+        for (int i = 0; i < edgeCache.getSize(slot) - 1; ++i) {
+            double segment = edgeCache.getOffset(slot, i + 1) - edgeCache.getOffset(slot, i);
+            double toLocation = distCalc.calcDist(edgeCache.getLat(slot, i), edgeCache.getLon(slot, i), location.lat, location.lon);
+            double fromLocation = distCalc.calcDist(location.lat, location.lon, edgeCache.getLat(slot, i + 1), edgeCache.getLon(slot, i + 1));
+            // The location is on the segment where the detour via the location is smallest.
+            double detour = toLocation + fromLocation - segment;
+            if (detour < minDetour) {
+                minDetour = detour;
+                offset = edgeCache.getOffset(slot, i) + toLocation;
+            }
+        }
+        double total = edgeCache.getLength(slot);
+        offsets[0] = offset;
+        offsets[1] = Math.max(0, total - offset);
+    }
+
+    /**
+     * Bidirectional search from a node to another node.
+     *
+     * Unlike {@link #route(int, int)}, this method returns the shortest distance and the start
+     * node is reached with distance 0 if it is the target. The node limit applies to the sum of
+     * the nodes reached by both searches. Paths longer than the maximum distance are reported as
+     * TOO_LONG.
+     */
+    public Result routeBidirectional(int fromNodeId, int toNodeId) {
+        backwardStarts[0] = toNodeId;
+        backwardOffsets[0] = 0;
+        return routeBidirectional(fromNodeId, backwardStarts, backwardOffsets, 1);
+    }
+
+    /**
+     * Bidirectional search from a node to a location on an edge (usually a snapped point).
+     *
+     * The backward search starts at both ends of the edge with their distance to the location
+     * as initial distance.
+     */
+    public Result routeBidirectionalToPoint(int fromNodeId, EdgeIteratorState destinationEdge, GHPoint destinationLocation) {
+        distancesAlongEdge(destinationEdge, destinationLocation, backwardOffsets);
+        backwardStarts[0] = destinationEdge.getBaseNode();
+        backwardStarts[1] = destinationEdge.getAdjNode();
+        return routeBidirectional(fromNodeId, backwardStarts, backwardOffsets, 2);
+    }
+
+    /**
+     * Bidirectional search from a node to the closest of a set of target nodes. Each target node
+     * has an offset which is added to the distance to it.
+     *
+     * @param fromNodeId start node of the forward search
+     * @param toNodeIds start nodes of the backward search
+     * @param toNodeOffsets initial distances of the start nodes of the backward search
+     * @param toNodeCount number of start nodes of the backward search
+     */
+    public Result routeBidirectional(int fromNodeId, int[] toNodeIds, double[] toNodeOffsets, int toNodeCount) {
+        DijkstraSearchContext forward = this.context;
+        DijkstraSearchContext backward = this.backwardContext;
+        startSearch(true);
+        forward.reset();
+        backward.reset();
+        DistanceLowerBound forwardBound = null;
+        DistanceLowerBound backwardBound = null;
+        if (goalDirected) {
+            forwardBound = this.forwardBound;
+            backwardBound = this.backwardBound;
+            forwardBound.clear();
+            for (int i = 0; i < toNodeCount; ++i) {
+                forwardBound.addTarget(toNodeIds[i], toNodeOffsets[i]);
+            }
+            backwardBound.clear();
+            backwardBound.addTarget(fromNodeId, 0);
+        }
+        forward.getQueue().push(forward.addNode(fromNodeId, 0, -1), 0);
+        for (int i = 0; i < toNodeCount; ++i) {
+            if (backwardBound != null && estimate(backwardBound, toNodeIds[i], toNodeOffsets[i]) > maxDistance) {
+                continue;
+            }
+            int slot = backward.getSlot(toNodeIds[i]);
+            if (slot == -1) {
+                slot = backward.addNode(toNodeIds[i], toNodeOffsets[i], -1);
+                backward.getQueue().push(slot, toNodeOffsets[i]);
+            } else if (toNodeOffsets[i] < backward.getDistance(slot)) {
+                backward.update(slot, toNodeOffsets[i], -1);
+                backward.getQueue().push(slot, toNodeOffsets[i]);
+            }
+        }
+        if (forwardBound != null && estimate(forwardBound, fromNodeId, 0) > maxDistance) {
+            return new Result(Status.TOO_LONG, maxDistance);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        while (true) {
+            double forwardTop = peekDistance(forward);
+            double backwardTop = peekDistance(backward);
+            // Every path which has not been found yet is at least forwardTop + backwardTop long.
+            if (best <= maxDistance && best <= forwardTop + backwardTop) {
+                return new Result(Status.OK, best);
+            }
+            if (forwardTop + backwardTop > maxDistance) {
+                return new Result(Status.TOO_LONG, maxDistance);
+            }
+            if (forward.size() + backward.size() >= maxNodes) {
+                return new Result(Status.TOO_MANY_NODES, maxDistance);
+            }
+            // expand the search with the smaller radius
+            if (forwardTop <= backwardTop) {
+                best = settleNext(forward, backward, best, forwardBound);
+            } else {
+                best = settleNext(backward, forward, best, backwardBound);
+            }
+        }
+    }
+
+    /**
+     * Get the lower bound of the length of a path via a node.
+     *
+     * @param bound lower bound of the remaining distance or null
+     * @param node node
+     * @param distance distance of the node from the start of the search
+     */
+    private static double estimate(DistanceLowerBound bound, int node, double distance) {
+        if (bound == null) {
+            return distance;
+        }
+        return distance + bound.get(node);
+    }
+
+    /**
+     * Remove outdated entries from the top of the queue and return the distance of the next node
+     * to be settled.
+     *
+     * @return distance or positive infinity if the queue is empty
+     */
+    private static double peekDistance(DijkstraSearchContext context) {
+        IntDoubleBinaryHeap queue = context.getQueue();
+        while (!queue.isEmpty()) {
+            int slot = queue.peekElement();
+            if (!context.isVisited(slot) && queue.peekKey() <= context.getDistance(slot)) {
+                return queue.peekKey();
+            }
+            queue.poll();
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Settle the next node of one direction of a bidirectional search.
+     *
+     * @param side search direction to expand, the top of its queue must be valid
+     * @param other opposite search direction
+     * @param best length of the shortest path found so far
+     * @param bound lower bound of the remaining distance of this direction, null if the search
+     * is not goal-directed
+     * @return length of the shortest path found so far
+     */
+    private double settleNext(DijkstraSearchContext side, DijkstraSearchContext other, double best, DistanceLowerBound bound) {
+        int slot = side.getQueue().poll();
+        double distance = side.getDistance(slot);
+        int baseNode = side.getNode(slot);
+        side.setVisited(slot);
+        ++settledNodes;
+        int otherSlot = other.getSlot(baseNode);
+        if (otherSlot != -1) {
+            best = Math.min(best, distance + other.getDistance(otherSlot));
+        }
+        EdgeIterator adjIter = side.getExplorer().setBaseNode(baseNode);
+        while (adjIter.next()) {
+            ++relaxedEdges;
+            int adj = adjIter.getAdjNode();
+            int adjSlot = side.getSlot(adj);
+            if (adjSlot != -1 && side.isVisited(adjSlot)) {
+                continue;
+            }
+            double newDistance = distance + adjIter.getDistance();
+            if (bound != null && estimate(bound, adj, newDistance) > maxDistance) {
+                continue;
+            }
+            if (adjSlot == -1) {
+                adjSlot = side.addNode(adj, newDistance, baseNode);
+                side.getQueue().push(adjSlot, newDistance);
+            } else if (side.getDistance(adjSlot) > newDistance) {
+                side.update(adjSlot, newDistance, baseNode);
+                side.getQueue().push(adjSlot, newDistance);
+            } else {
+                continue;
+            }
+            otherSlot = other.getSlot(adj);
+            if (otherSlot != -1) {
+                best = Math.min(best, newDistance + other.getDistance(otherSlot));
+            }
+        }
+        return best;
+    }
 }
@@ -0,0 +1,109 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import java.util.Arrays;
+
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+
+/**
+ * Lower bound of the distance on the graph from a node to the closest of a set of targets,
+ * based on the beeline distance and, if available, on landmark distances.
+ *
+ * Each target may have an offset which is added to the bound of it. This is used if the actual
+ * destination is a location on an edge and the targets are the ends of that edge.
+ *
+ * The beeline distance is multiplied with a safety factor slightly below 1 because the distance
+ * calculation of the search does not need to match the one used at import and because
+ * coordinates are stored with limited precision. Without it, the bound could exceed the real
+ * distance by a few centimetres.
+ */
+public class DistanceLowerBound {
+
+    static final double SAFETY_FACTOR = 0.99;
+
+    private final NodeAccess nodeAccess;
+    private final DistanceCalc distCalc;
+    private LandmarkStore landmarks = null;
+    private int landmarkCount = 0;
+    private double[] lats = new double[2];
+    private double[] lons = new double[2];
+    private double[] offsets = new double[2];
+    // landmark distances of the targets, landmarkCount entries per target
+    private int[] targetLandmarkDistances = new int[0];
+    private boolean[] hasLandmarkDistances = new boolean[2];
+    private int count = 0;
+
+    public DistanceLowerBound(NodeAccess nodeAccess, DistanceCalc distCalc) {
+        this.nodeAccess = nodeAccess;
+        this.distCalc = distCalc;
+    }
+
+    /**
+     * Use landmark distances in addition to the beeline distance.
+     *
+     * @param landmarks landmark distances or null to use the beeline distance only
+     */
+    public void setLandmarks(LandmarkStore landmarks) {
+        this.landmarks = landmarks;
+        this.landmarkCount = (landmarks == null) ? 0 : landmarks.getLandmarkCount();
+        this.targetLandmarkDistances = new int[lats.length * landmarkCount];
+        this.count = 0;
+    }
+
+    /**
+     * Remove all targets.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    private void ensureCapacity() {
+        if (count == lats.length) {
+            lats = Arrays.copyOf(lats, 2 * count);
+            lons = Arrays.copyOf(lons, 2 * count);
+            offsets = Arrays.copyOf(offsets, 2 * count);
+            hasLandmarkDistances = Arrays.copyOf(hasLandmarkDistances, 2 * count);
+            targetLandmarkDistances = Arrays.copyOf(targetLandmarkDistances, 2 * count * landmarkCount);
+        }
+    }
+
+    public void addTarget(double lat, double lon, double offset) {
+        ensureCapacity();
+        lats[count] = lat;
+        lons[count] = lon;
+        offsets[count] = offset;
+        hasLandmarkDistances[count] = false;
+        ++count;
+    }
+
+    public void addTarget(int node, double offset) {
+        ensureCapacity();
+        lats[count] = nodeAccess.getLat(node);
+        lons[count] = nodeAccess.getLon(node);
+        offsets[count] = offset;
+        hasLandmarkDistances[count] = landmarkCount > 0;
+        if (landmarkCount > 0) {
+            landmarks.getDistances(node, targetLandmarkDistances, count * landmarkCount);
+        }
+        ++count;
+    }
+
+    /**
+     * Get the lower bound of the distance from a node to the closest target.
+     *
+     * @return lower bound or positive infinity if there are no targets
+     */
+    public double get(int node) {
+        double lat = nodeAccess.getLat(node);
+        double lon = nodeAccess.getLon(node);
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; ++i) {
+            double bound = SAFETY_FACTOR * distCalc.calcDist(lat, lon, lats[i], lons[i]);
+            if (hasLandmarkDistances[i]) {
+                bound = Math.max(bound, landmarks.getLowerBound(node, targetLandmarkDistances, i * landmarkCount));
+            }
+            min = Math.min(min, bound + offsets[i]);
+        }
+        return min;
+    }
+}
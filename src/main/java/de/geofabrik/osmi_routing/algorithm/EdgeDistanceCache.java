@@ -0,0 +1,136 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import java.util.Arrays;
+
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+/**
+ * Cache of edge geometries and the cumulative distances along them.
+ *
+ * The cache is two-way set-associative: each edge in each direction has two possible slots, a
+ * new edge replaces the less recently used one. Therefore the slot of an edge stays valid if one
+ * other edge is loaded, e.g. the matched edge of an open end does not evict the open end. The
+ * arrays of a slot are reused when it is replaced, therefore lookups of cached edges and most
+ * replacements do not allocate memory.
+ *
+ * Instances are not thread-safe. Use one instance per worker thread.
+ */
+public class EdgeDistanceCache {
+
+    private final DistanceCalc distCalc;
+    private final int setMask;
+    private final int[] edgeIds;
+    private final int[] baseNodes;
+    private final int[] sizes;
+    private final double[][] lats;
+    private final double[][] lons;
+    private final double[][] cumulativeDistances;
+    // per set the way which was used least recently
+    private final byte[] leastRecentWays;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param distCalc distance calculation used for the segments
+     * @param capacity number of slots, rounded up to a power of two, at least 2
+     */
+    public EdgeDistanceCache(DistanceCalc distCalc, int capacity) {
+        this.distCalc = distCalc;
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.setMask = size / 2 - 1;
+        this.leastRecentWays = new byte[size / 2];
+        this.edgeIds = new int[size];
+        Arrays.fill(edgeIds, -1);
+        this.baseNodes = new int[size];
+        this.sizes = new int[size];
+        this.lats = new double[size][];
+        this.lons = new double[size][];
+        this.cumulativeDistances = new double[size][];
+    }
+
+    private int setFor(int edgeId, int baseNode) {
+        int h = (edgeId * 31 + baseNode) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & setMask;
+    }
+
+    /**
+     * Get the slot of an edge and fill it if the edge is not cached yet.
+     *
+     * The geometry of the slot starts at the base node of the edge and ends at its adjacent node.
+     */
+    public int load(EdgeIteratorState edge) {
+        int set = setFor(edge.getEdge(), edge.getBaseNode());
+        for (int way = 0; way < 2; ++way) {
+            int slot = 2 * set + way;
+            if (edgeIds[slot] == edge.getEdge() && baseNodes[slot] == edge.getBaseNode()) {
+                ++hits;
+                leastRecentWays[set] = (byte) (1 - way);
+                return slot;
+            }
+        }
+        int way = leastRecentWays[set];
+        int slot = 2 * set + way;
+        leastRecentWays[set] = (byte) (1 - way);
+        ++misses;
+        PointList geometry = edge.fetchWayGeometry(3);
+        int size = geometry.size();
+        if (lats[slot] == null || lats[slot].length < size) {
+            int length = Math.max(size, 8);
+            lats[slot] = new double[length];
+            lons[slot] = new double[length];
+            cumulativeDistances[slot] = new double[length];
+        }
+        double[] slotLats = lats[slot];
+        double[] slotLons = lons[slot];
+        double[] slotDistances = cumulativeDistances[slot];
+        double total = 0;
+        for (int i = 0; i < size; ++i) {
+            slotLats[i] = geometry.getLat(i);
+            slotLons[i] = geometry.getLon(i);
+            if (i > 0) {
+                total += distCalc.calcDist(slotLats[i - 1], slotLons[i - 1], slotLats[i], slotLons[i]);
+            }
+            slotDistances[i] = total;
+        }
+        edgeIds[slot] = edge.getEdge();
+        baseNodes[slot] = edge.getBaseNode();
+        sizes[slot] = size;
+        return slot;
+    }
+
+    /**
+     * Number of points of the geometry including base and adjacent node.
+     */
+    public int getSize(int slot) {
+        return sizes[slot];
+    }
+
+    public double getLat(int slot, int pointIndex) {
+        return lats[slot][pointIndex];
+    }
+
+    public double getLon(int slot, int pointIndex) {
+        return lons[slot][pointIndex];
+    }
+
+    /**
+     * Get the distance from the base node to a point of the geometry.
+     */
+    public double getOffset(int slot, int pointIndex) {
+        return cumulativeDistances[slot][pointIndex];
+    }
+
+    public double getLength(int slot) {
+        return cumulativeDistances[slot][sizes[slot] - 1];
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+}
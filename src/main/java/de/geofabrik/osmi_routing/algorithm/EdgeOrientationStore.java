@@ -0,0 +1,112 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+/**
+ * Orientation of the first and the last segment of all edges.
+ *
+ * The checks of the angles between an open end and the matched edge need the orientation of
+ * edges at their tower nodes. Reading it from this store saves fetching the geometry and
+ * calculating the orientation again and again.
+ *
+ * Orientations are calculated like by {@link AngleCalc#calcOrientation} and stored as 16 bit
+ * integers, the error is less than 0.003°. Each edge needs 4 bytes. The data is stored in a file
+ * of the graph directory and reused if the graph did not change.
+ */
+public class EdgeOrientationStore {
+
+    static final Logger logger = LogManager.getLogger(EdgeOrientationStore.class.getName());
+
+    private static final int STEPS = 1 << 16;
+    private static final int BYTES_PER_EDGE = 4;
+
+    private final DataAccess orientations;
+    private final AngleCalc angleCalc = new AngleCalc();
+
+    public EdgeOrientationStore(Directory dir, String fileName) {
+        this.orientations = dir.find(fileName);
+    }
+
+    /**
+     * Load orientations from disk.
+     *
+     * @return false if there is no file or it does not match the graph
+     */
+    public boolean loadExisting(Graph graph) {
+        if (!orientations.loadExisting()) {
+            return false;
+        }
+        if (orientations.getHeader(0) != graph.getAllEdges().length() || orientations.getHeader(4) != graph.getNodes()) {
+            logger.info("Edge orientations on disk do not match the graph, they will be recalculated.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Calculate the orientations of all edges.
+     */
+    public void prepare(Graph graph) {
+        int edges = graph.getAllEdges().length();
+        orientations.create(1000);
+        orientations.ensureCapacity((long) BYTES_PER_EDGE * Math.max(1, edges));
+        orientations.setHeader(0, edges);
+        orientations.setHeader(4, graph.getNodes());
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            PointList geometry = iter.fetchWayGeometry(3);
+            int last = geometry.size() - 1;
+            double forward = angleCalc.calcOrientation(geometry.getLat(0), geometry.getLon(0), geometry.getLat(1),
+                    geometry.getLon(1), false);
+            double backward = angleCalc.calcOrientation(geometry.getLat(last), geometry.getLon(last),
+                    geometry.getLat(last - 1), geometry.getLon(last - 1), false);
+            long pointer = (long) BYTES_PER_EDGE * iter.getEdge();
+            orientations.setShort(pointer, quantize(forward));
+            orientations.setShort(pointer + 2, quantize(backward));
+        }
+    }
+
+    private static short quantize(double orientation) {
+        return (short) Math.round(Math.toDegrees(orientation) / 360 * STEPS);
+    }
+
+    private double getOrientation(int edge, boolean adjacentEnd) {
+        long pointer = (long) BYTES_PER_EDGE * edge + (adjacentEnd ? 2 : 0);
+        return orientations.getShort(pointer) * 360.0 / STEPS;
+    }
+
+    /**
+     * Get the orientation of the segment of an edge leaving its base node.
+     *
+     * @return orientation in degrees, -180 to 180
+     */
+    public double getStartOrientation(EdgeIteratorState edge) {
+        return getOrientation(edge.getEdge(), edge.get(EdgeIteratorState.REVERSE_STATE));
+    }
+
+    /**
+     * Get the orientation of the segment of an edge leaving its adjacent node.
+     *
+     * @return orientation in degrees, -180 to 180
+     */
+    public double getEndOrientation(EdgeIteratorState edge) {
+        return getOrientation(edge.getEdge(), !edge.get(EdgeIteratorState.REVERSE_STATE));
+    }
+
+    public void flush() {
+        orientations.flush();
+    }
+
+    public void close() {
+        orientations.close();
+    }
+}
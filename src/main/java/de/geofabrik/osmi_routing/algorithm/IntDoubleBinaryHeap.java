@@ -0,0 +1,117 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int elements ordered by a double key, backed by primitive arrays.
+ *
+ * The heap does not support decrease-key. Callers push an element again with its new key
+ * and skip outdated entries when they are polled (lazy deletion).
+ */
+public class IntDoubleBinaryHeap {
+
+    private int[] elements;
+    private double[] keys;
+    private int size;
+
+    public IntDoubleBinaryHeap(int initialCapacity) {
+        this.elements = new int[Math.max(1, initialCapacity)];
+        this.keys = new double[Math.max(1, initialCapacity)];
+        this.size = 0;
+    }
+
+    public IntDoubleBinaryHeap() {
+        this(64);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all elements. The backing arrays are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public void push(int element, double key) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, 2 * size);
+            keys = Arrays.copyOf(keys, 2 * size);
+        }
+        int pos = size;
+        ++size;
+        // sift up
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            elements[pos] = elements[parent];
+            keys[pos] = keys[parent];
+            pos = parent;
+        }
+        elements[pos] = element;
+        keys[pos] = key;
+    }
+
+    /**
+     * Get the key of the smallest element without removing it.
+     */
+    public double peekKey() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty.");
+        }
+        return keys[0];
+    }
+
+    /**
+     * Get the smallest element without removing it.
+     */
+    public int peekElement() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty.");
+        }
+        return elements[0];
+    }
+
+    /**
+     * Remove the smallest element and return it.
+     */
+    public int poll() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty.");
+        }
+        int result = elements[0];
+        --size;
+        if (size == 0) {
+            return result;
+        }
+        int element = elements[size];
+        double key = keys[size];
+        // sift down
+        int pos = 0;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child]) {
+                child = right;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            elements[pos] = elements[child];
+            keys[pos] = keys[child];
+            pos = child;
+        }
+        elements[pos] = element;
+        keys[pos] = key;
+        return result;
+    }
+}
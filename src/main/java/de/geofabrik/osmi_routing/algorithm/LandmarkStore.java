@@ -0,0 +1,194 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+
+/**
+ * Distances from a small set of landmark nodes to all nodes of the graph (ALT preprocessing).
+ *
+ * By the triangle inequality, |d(L, t) - d(L, v)| is a lower bound of the distance between v and
+ * t for every landmark L. The graph is treated as undirected, like by {@link DijkstraWithLimits}.
+ *
+ * Distances are stored as integer decimetres. Edge lengths are rounded down before the
+ * distances are calculated, therefore the bounds never exceed the real distance. The distances
+ * of a node to all landmarks are stored next to each other. Nodes which are not reachable from a
+ * landmark do not get a bound from it.
+ *
+ * The data is stored in a file of the graph directory and reused if the graph did not change.
+ */
+public class LandmarkStore {
+
+    static final Logger logger = LogManager.getLogger(LandmarkStore.class.getName());
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final double UNITS_PER_METRE = 10;
+
+    private final DataAccess distances;
+    private int landmarkCount = 0;
+    private int nodeCount = 0;
+
+    public LandmarkStore(Directory dir, String fileName) {
+        this.distances = dir.find(fileName);
+    }
+
+    public int getLandmarkCount() {
+        return landmarkCount;
+    }
+
+    /**
+     * Load landmark distances from disk.
+     *
+     * @return false if there is no file or it does not match the graph or the number of landmarks
+     */
+    public boolean loadExisting(Graph graph, int landmarks) {
+        if (!distances.loadExisting()) {
+            return false;
+        }
+        if (distances.getHeader(0) != landmarks || distances.getHeader(4) != graph.getNodes()
+                || distances.getHeader(8) != graph.getAllEdges().length()) {
+            logger.info("Landmark distances on disk do not match the graph, they will be recalculated.");
+            return false;
+        }
+        landmarkCount = landmarks;
+        nodeCount = graph.getNodes();
+        return true;
+    }
+
+    /**
+     * Select landmarks and calculate their distances to all nodes.
+     *
+     * The first landmark is the node farthest away from an arbitrary node, each following
+     * landmark is the node farthest away from all previous ones.
+     */
+    public void prepare(Graph graph, int landmarks) {
+        landmarkCount = landmarks;
+        nodeCount = graph.getNodes();
+        distances.create(1000);
+        distances.ensureCapacity(4L * landmarkCount * Math.max(1, nodeCount));
+        distances.setHeader(0, landmarkCount);
+        distances.setHeader(4, nodeCount);
+        distances.setHeader(8, graph.getAllEdges().length());
+        if (nodeCount == 0 || landmarkCount == 0) {
+            return;
+        }
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntDoubleBinaryHeap queue = new IntDoubleBinaryHeap(1000);
+        // Use the slot of the first landmark to find the first landmark.
+        calculateDistances(explorer, queue, 0, 0);
+        int landmark = findFarthestNode(1);
+        for (int l = 0; l < landmarkCount; ++l) {
+            logger.info("Calculating distances of landmark " + (l + 1) + " of " + landmarkCount + " (node "
+                    + landmark + ")");
+            calculateDistances(explorer, queue, l, landmark);
+            landmark = findFarthestNode(l + 1);
+        }
+        logger.info("Landmark preparation finished, " + Helper.getMemInfo());
+    }
+
+    private long pointer(int node, int landmarkIndex) {
+        return 4L * ((long) node * landmarkCount + landmarkIndex);
+    }
+
+    /**
+     * Get distance in decimetres from a landmark to a node or UNREACHABLE.
+     */
+    public int getDistance(int landmarkIndex, int node) {
+        return distances.getInt(pointer(node, landmarkIndex));
+    }
+
+    /**
+     * Run a full Dijkstra search from a landmark and store the distances to all nodes.
+     */
+    private void calculateDistances(EdgeExplorer explorer, IntDoubleBinaryHeap queue, int landmarkIndex, int landmark) {
+        for (int node = 0; node < nodeCount; ++node) {
+            distances.setInt(pointer(node, landmarkIndex), UNREACHABLE);
+        }
+        queue.clear();
+        distances.setInt(pointer(landmark, landmarkIndex), 0);
+        queue.push(landmark, 0);
+        while (!queue.isEmpty()) {
+            int distance = (int) queue.peekKey();
+            int node = queue.poll();
+            if (distance > getDistance(landmarkIndex, node)) {
+                // outdated queue entry
+                continue;
+            }
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                long newDistance = distance + (long) Math.floor(iter.getDistance() * UNITS_PER_METRE);
+                if (newDistance < getDistance(landmarkIndex, adj)) {
+                    distances.setInt(pointer(adj, landmarkIndex), (int) newDistance);
+                    queue.push(adj, newDistance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the reachable node whose smallest distance to the first landmarks is largest.
+     *
+     * @param landmarks number of landmarks to take into account
+     */
+    private int findFarthestNode(int landmarks) {
+        int farthest = 0;
+        int farthestDistance = -1;
+        for (int node = 0; node < nodeCount; ++node) {
+            int min = UNREACHABLE;
+            for (int l = 0; l < landmarks; ++l) {
+                min = Math.min(min, getDistance(l, node));
+            }
+            if (min != UNREACHABLE && min > farthestDistance) {
+                farthest = node;
+                farthestDistance = min;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Copy the distances of a node to all landmarks into an array.
+     */
+    public void getDistances(int node, int[] target, int offset) {
+        for (int l = 0; l < landmarkCount; ++l) {
+            target[offset + l] = getDistance(l, node);
+        }
+    }
+
+    /**
+     * Get the lower bound of the distance between a node and a node whose landmark distances
+     * are given.
+     *
+     * @param node node
+     * @param targetDistances distances of the other node to all landmarks
+     * @param offset index of the first landmark distance in targetDistances
+     * @return lower bound in metres
+     */
+    public double getLowerBound(int node, int[] targetDistances, int offset) {
+        int max = 0;
+        for (int l = 0; l < landmarkCount; ++l) {
+            int targetDistance = targetDistances[offset + l];
+            int nodeDistance = getDistance(l, node);
+            if (targetDistance == UNREACHABLE || nodeDistance == UNREACHABLE) {
+                continue;
+            }
+            max = Math.max(max, Math.abs(targetDistance - nodeDistance));
+        }
+        return max / UNITS_PER_METRE;
+    }
+
+    public void flush() {
+        distances.flush();
+    }
+
+    public void close() {
+        distances.close();
+    }
+}
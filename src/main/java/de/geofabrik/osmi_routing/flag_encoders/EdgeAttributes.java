@@ -0,0 +1,62 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing.flag_encoders;
+
+import com.graphhopper.util.EdgeIteratorState;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+/**
+ * Attributes of edges used by the detection of routing errors.
+ *
+ * This class decodes them from the flags of the edge on every call. See
+ * {@link PackedEdgeAttributes} for a version which decodes them once for all edges.
+ */
+public class EdgeAttributes {
+
+    protected final AllRoadsFlagEncoder encoder;
+
+    public EdgeAttributes(AllRoadsFlagEncoder encoder) {
+        this.encoder = encoder;
+    }
+
+    public RoadClass getRoadClass(EdgeIteratorState edge) {
+        return encoder.getRoadClass(edge);
+    }
+
+    public boolean isPrivateAccess(EdgeIteratorState edge) {
+        return encoder.isPrivateAccess(edge);
+    }
+
+    public boolean isArea(EdgeIteratorState edge) {
+        return encoder.isArea(edge);
+    }
+
+    public boolean isLevelValid(EdgeIteratorState edge) {
+        return encoder.isLevelValid(edge);
+    }
+
+    public int getLevel(EdgeIteratorState edge) {
+        return encoder.getLevel(edge);
+    }
+
+    public int getLevelDiff(EdgeIteratorState edge) {
+        return encoder.getLevelDiff(edge);
+    }
+}
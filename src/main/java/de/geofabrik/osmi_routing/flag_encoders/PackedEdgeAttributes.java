@@ -0,0 +1,111 @@
+/*
+ *  © 2019 Geofabrik GmbH
+ *
+ *  This file is part of osmi_routing.
+ *
+ *  osmi_routing is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License.
+ *
+ *  osmi_routing is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with osmi_simple_views. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.geofabrik.osmi_routing.flag_encoders;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+/**
+ * Attributes of edges decoded once after the import and stored in arrays indexed by edge ID.
+ *
+ * Each edge needs two bytes: the ordinal of the road class and a byte of flags (bit 0: private
+ * access, bit 1: area, bit 2: valid level, bit 3: level difference, bits 4 to 7: level plus
+ * {@link #LEVEL_OFFSET}). The arrays are read-only after construction and can be shared by all
+ * threads. The edges must not change afterwards.
+ */
+public class PackedEdgeAttributes extends EdgeAttributes {
+
+    private static final int PRIVATE = 1;
+    private static final int AREA = 1 << 1;
+    private static final int LEVEL_VALID = 1 << 2;
+    private static final int LEVEL_DIFF = 1 << 3;
+    private static final int LEVEL_SHIFT = 4;
+    /** Added to the level to make it fit into four bits without sign. */
+    static final int LEVEL_OFFSET = 7;
+
+    private static final RoadClass[] ROAD_CLASSES = RoadClass.values();
+
+    private final byte[] roadClasses;
+    private final byte[] flags;
+
+    public PackedEdgeAttributes(Graph graph, AllRoadsFlagEncoder encoder) {
+        super(encoder);
+        int edges = graph.getAllEdges().length();
+        roadClasses = new byte[edges];
+        flags = new byte[edges];
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            int edge = iter.getEdge();
+            roadClasses[edge] = (byte) encoder.getRoadClass(iter).ordinal();
+            int levelDiff = encoder.getLevelDiff(iter);
+            int level = encoder.getLevel(iter) + LEVEL_OFFSET;
+            if (level < 0 || level > 15 || levelDiff < 0 || levelDiff > 1) {
+                throw new IllegalStateException("Level " + encoder.getLevel(iter) + " with difference " + levelDiff
+                        + " of edge " + edge + " cannot be packed.");
+            }
+            int packed = level << LEVEL_SHIFT;
+            if (encoder.isPrivateAccess(iter)) {
+                packed |= PRIVATE;
+            }
+            if (encoder.isArea(iter)) {
+                packed |= AREA;
+            }
+            if (encoder.isLevelValid(iter)) {
+                packed |= LEVEL_VALID;
+            }
+            if (levelDiff == 1) {
+                packed |= LEVEL_DIFF;
+            }
+            flags[edge] = (byte) packed;
+        }
+    }
+
+    @Override
+    public RoadClass getRoadClass(EdgeIteratorState edge) {
+        return ROAD_CLASSES[roadClasses[edge.getEdge()] & 0xFF];
+    }
+
+    @Override
+    public boolean isPrivateAccess(EdgeIteratorState edge) {
+        return (flags[edge.getEdge()] & PRIVATE) != 0;
+    }
+
+    @Override
+    public boolean isArea(EdgeIteratorState edge) {
+        return (flags[edge.getEdge()] & AREA) != 0;
+    }
+
+    @Override
+    public boolean isLevelValid(EdgeIteratorState edge) {
+        return (flags[edge.getEdge()] & LEVEL_VALID) != 0;
+    }
+
+    @Override
+    public int getLevel(EdgeIteratorState edge) {
+        return ((flags[edge.getEdge()] & 0xFF) >>> LEVEL_SHIFT) - LEVEL_OFFSET;
+    }
+
+    @Override
+    public int getLevelDiff(EdgeIteratorState edge) {
+        return (flags[edge.getEdge()] & LEVEL_DIFF) != 0 ? 1 : 0;
+    }
+}
@@ -0,0 +1,182 @@
+package de.geofabrik.osmi_routing.index;
+
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.coll.GHIntHashSet;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.osmi_routing.algorithm.EdgeDistanceCache;
+
+/**
+ * Location index which can search the closest edge accepted by a predicate.
+ *
+ * LocationIndexTree.findNClosest creates a QueryResult for every edge in the tiles around the
+ * query point and leaves it to the caller to throw away the unwanted ones. The query of this class
+ * applies the predicate while it scans the edges and only creates a QueryResult for the closest
+ * accepted edge. The distance bound starts with the search radius and shrinks to the distance of
+ * the closest accepted edge. The predicate is only evaluated for edges closer than the bound and
+ * the search stops extending the searched tiles as soon as they cover the bound.
+ */
+public class ConstrainedLocationIndex extends LocationIndexTree {
+
+    /** Maximum number of rings of tiles searched around the tile of the query point. */
+    static final int MAX_ITERATIONS = 8;
+
+    public ConstrainedLocationIndex(Graph graph, Directory dir) {
+        super(graph, dir);
+    }
+
+    /**
+     * Create the state of queries of one thread.
+     *
+     * @param edgeCache cache for edge geometries, usually the one used by the routing of the same
+     * thread
+     */
+    public Query createQuery(EdgeDistanceCache edgeCache) {
+        return new Query(edgeCache);
+    }
+
+    /**
+     * Reusable state of queries. Instances are not thread-safe.
+     */
+    public class Query {
+
+        private final EdgeDistanceCache edgeCache;
+        private final EdgeExplorer explorer;
+        private final NodeAccess nodeAccess;
+        private final GHIntHashSet entries = new GHIntHashSet();
+        private final GHIntHashSet visitedEdges = new GHIntHashSet();
+        private final GHPoint center = new GHPoint();
+        // closest accepted location found so far
+        private double bestNormedDist;
+        private int bestEdge;
+        private int bestAdjNode;
+        private int bestClosestNode;
+        private int bestWayIndex;
+        private QueryResult.Position bestPosition;
+        private final EdgeSnap snap;
+        // step of the last query with escalating radii
+        private int lastStep;
+
+        Query(EdgeDistanceCache edgeCache) {
+            this.edgeCache = edgeCache;
+            this.explorer = graph.createEdgeExplorer();
+            this.nodeAccess = graph.getNodeAccess();
+            this.snap = new EdgeSnap(distCalc);
+        }
+
+        /**
+         * Find the closest location on an edge accepted by the predicate.
+         *
+         * @param radius maximum distance in metres
+         * @return result or null if there is no accepted edge within the radius
+         */
+        public QueryResult findClosest(double lat, double lon, EdgeCandidatePredicate predicate, double radius) {
+            bestNormedDist = distCalc.calcNormalizedDist(radius);
+            bestEdge = -1;
+            visitedEdges.clear();
+            for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration) {
+                entries.clear();
+                findNetworkEntries(lat, lon, entries, iteration);
+                for (IntCursor cursor : entries) {
+                    checkEdgesOf(cursor.value, lat, lon, predicate);
+                }
+                if (distCalc.calcNormalizedDist(searchedRadius(lat, lon, iteration)) >= bestNormedDist) {
+                    // no edge outside the searched tiles can be closer
+                    break;
+                }
+            }
+            if (bestEdge < 0) {
+                return null;
+            }
+            return snap.createResult(lat, lon, bestNormedDist, bestClosestNode, graph.getEdgeIteratorState(bestEdge, bestAdjNode),
+                    bestWayIndex, bestPosition);
+        }
+
+        /**
+         * Find the closest location on an edge accepted by the predicate, searching with the
+         * smallest radius first and widening it only if nothing is found.
+         *
+         * The result equals the result of a query with the largest radius because a location
+         * found within a smaller radius is closer than any location outside of it.
+         *
+         * @param radii increasing radii in metres, the last one is the maximum distance
+         * @return result or null if there is no accepted edge within the largest radius
+         */
+        public QueryResult findClosest(double lat, double lon, EdgeCandidatePredicate predicate, double[] radii) {
+            for (lastStep = 0; lastStep < radii.length; ++lastStep) {
+                QueryResult result = findClosest(lat, lon, predicate, radii[lastStep]);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the index of the radius the last query with escalating radii stopped at.
+         *
+         * @return index of the radius or the number of radii if nothing was found
+         */
+        public int getLastStep() {
+            return lastStep;
+        }
+
+        /**
+         * Distance from the query point to the border of the tiles searched up to the given
+         * iteration.
+         */
+        private double searchedRadius(double lat, double lon, int iteration) {
+            keyAlgo.decode(keyAlgo.encode(lat, lon), center);
+            double halfHeight = (0.5 + iteration) * getDeltaLat();
+            double halfWidth = (0.5 + iteration) * getDeltaLon();
+            double dLat = Math.min(lat - (center.lat - halfHeight), center.lat + halfHeight - lat);
+            double dLon = Math.min(lon - (center.lon - halfWidth), center.lon + halfWidth - lon);
+            return Math.min(distCalc.calcDist(lat, lon, lat + dLat, lon), distCalc.calcDist(lat, lon, lat, lon + dLon));
+        }
+
+        /**
+         * Find the closest location on each edge of a node and offer it to the predicate if it is
+         * closer than the current bound. The closest location on an edge is determined the same
+         * way as by LocationIndexTree.
+         */
+        private void checkEdgesOf(int node, double queryLat, double queryLon, EdgeCandidatePredicate predicate) {
+            double nodeLat = nodeAccess.getLat(node);
+            double nodeLon = nodeAccess.getLon(node);
+            double nodeNormedDist = distCalc.calcNormalizedDist(queryLat, queryLon, nodeLat, nodeLon);
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (!visitedEdges.add(iter.getEdge())) {
+                    continue;
+                }
+                int adjNode = iter.getAdjNode();
+                double adjNormedDist = distCalc.calcNormalizedDist(nodeAccess.getLat(adjNode), nodeAccess.getLon(adjNode),
+                        queryLat, queryLon);
+                // if there are pillar nodes, this is only an approximation
+                snap.start(adjNormedDist < nodeNormedDist ? adjNode : node, nodeNormedDist);
+                int slot = edgeCache.load(iter);
+                int size = edgeCache.getSize(slot);
+                // point 0 of the cached geometry is the base node
+                for (int pointIndex = 0; pointIndex < size - 1; ++pointIndex) {
+                    snap.addSegment(queryLat, queryLon, edgeCache.getLat(slot, pointIndex), edgeCache.getLon(slot, pointIndex),
+                            edgeCache.getLat(slot, pointIndex + 1), edgeCache.getLon(slot, pointIndex + 1), pointIndex,
+                            pointIndex + 2 == size);
+                }
+                if (snap.normedDist < bestNormedDist && predicate.accept(iter, snap.closestNode, snap.position)) {
+                    bestNormedDist = snap.normedDist;
+                    bestEdge = iter.getEdge();
+                    bestAdjNode = adjNode;
+                    bestClosestNode = snap.closestNode;
+                    bestWayIndex = snap.wayIndex;
+                    bestPosition = snap.position;
+                }
+            }
+        }
+    }
+}
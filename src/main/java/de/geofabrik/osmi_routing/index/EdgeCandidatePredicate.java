@@ -0,0 +1,18 @@
+package de.geofabrik.osmi_routing.index;
+
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Decide whether the closest location on an edge is an acceptable result of a location index
+ * query.
+ */
+public interface EdgeCandidatePredicate {
+
+    /**
+     * @param edge edge, only valid during the call
+     * @param closestNode tower node of the edge closest to the query point
+     * @param position type of the closest location on the edge
+     */
+    boolean accept(EdgeIteratorState edge, int closestNode, QueryResult.Position position);
+}
@@ -0,0 +1,83 @@
+package de.geofabrik.osmi_routing.index;
+
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Closest location on an edge to a query point. It is determined the same way as by
+ * LocationIndexTree.
+ *
+ * Instances are reused for many edges and are not thread-safe.
+ */
+class EdgeSnap {
+
+    private final DistanceCalc distCalc;
+    // closest location on the current edge
+    double normedDist;
+    int closestNode;
+    int wayIndex;
+    QueryResult.Position position;
+
+    EdgeSnap(DistanceCalc distCalc) {
+        this.distCalc = distCalc;
+    }
+
+    /**
+     * Start with a new edge. Its base node is the closest location until a segment is closer.
+     *
+     * @param closestNode tower node of the edge closest to the query point
+     * @param baseNormedDist normalized distance from the query point to the base node
+     */
+    void start(int closestNode, double baseNormedDist) {
+        this.normedDist = baseNormedDist;
+        this.closestNode = closestNode;
+        this.wayIndex = 0;
+        this.position = QueryResult.Position.TOWER;
+    }
+
+    /**
+     * Check a segment of the edge. Segments have to be passed in their order from the base node.
+     *
+     * @param pointIndex index of the first point of the segment, 0 is the base node
+     * @param last true if the segment ends at the adjacent node
+     */
+    void addSegment(double queryLat, double queryLon, double prevLat, double prevLon, double wayLat, double wayLon,
+            int pointIndex, boolean last) {
+        if (distCalc.isCrossBoundary(prevLon, wayLon)) {
+            return;
+        }
+        if (distCalc.validEdgeDistance(queryLat, queryLon, prevLat, prevLon, wayLat, wayLon)) {
+            offer(distCalc.calcNormalizedEdgeDistance(queryLat, queryLon, prevLat, prevLon, wayLat, wayLon), pointIndex,
+                    QueryResult.Position.EDGE);
+        } else {
+            offer(distCalc.calcNormalizedDist(queryLat, queryLon, wayLat, wayLon), pointIndex + 1,
+                    last ? QueryResult.Position.TOWER : QueryResult.Position.PILLAR);
+        }
+    }
+
+    /**
+     * Create a query result for a location found by this class.
+     *
+     * @param edge edge oriented like the geometry the way index refers to
+     */
+    QueryResult createResult(double queryLat, double queryLon, double normedDist, int closestNode, EdgeIteratorState edge,
+            int wayIndex, QueryResult.Position position) {
+        QueryResult result = new QueryResult(queryLat, queryLon);
+        result.setQueryDistance(distCalc.calcDenormalizedDist(normedDist));
+        result.setClosestNode(closestNode);
+        result.setClosestEdge(edge);
+        result.setWayIndex(wayIndex);
+        result.setSnappedPosition(position);
+        result.calcSnappedPoint(distCalc);
+        return result;
+    }
+
+    private void offer(double normedDist, int wayIndex, QueryResult.Position position) {
+        if (normedDist < this.normedDist) {
+            this.normedDist = normedDist;
+            this.wayIndex = wayIndex;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.geofabrik.osmi_routing.index;
+
+import java.util.Arrays;
+
+import com.graphhopper.storage.NodeAccess;
+
+/**
+ * Order of nodes along a Hilbert curve.
+ *
+ * Nodes which are close to each other on the curve are close to each other on the map. Processing
+ * nodes in this order lets consecutive lookups hit the same parts of the location index and of the
+ * edge storage.
+ */
+public class HilbertOrder {
+
+    /** Number of bits per axis. The position on the curve fits into 32 bits. */
+    public static final int BITS = 16;
+    private static final int SIDE = 1 << BITS;
+
+    /**
+     * Get the position of a cell on the Hilbert curve.
+     *
+     * @param x column, 0 to 2^BITS - 1
+     * @param y row, 0 to 2^BITS - 1
+     * @return position on the curve, interpret as unsigned 32 bit integer
+     */
+    public static int index(int x, int y) {
+        int d = 0;
+        for (int s = SIDE >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Get the position of a coordinate on the Hilbert curve covering the whole world.
+     */
+    public static int index(double lat, double lon) {
+        int x = (int) Math.min(SIDE - 1, Math.max(0, (lon + 180) / 360 * SIDE));
+        int y = (int) Math.min(SIDE - 1, Math.max(0, (lat + 90) / 180 * SIDE));
+        return index(x, y);
+    }
+
+    /**
+     * Sort node IDs by the position of the nodes on the Hilbert curve.
+     *
+     * Nodes in the same cell are sorted by their ID, therefore the order is deterministic. Sorting
+     * needs 8 bytes per node temporarily.
+     *
+     * @param nodes node IDs, will be sorted in place
+     */
+    public static void sortNodes(NodeAccess nodeAccess, int[] nodes) {
+        long[] keys = new long[nodes.length];
+        for (int i = 0; i < nodes.length; ++i) {
+            int node = nodes[i];
+            long position = index(nodeAccess.getLat(node), nodeAccess.getLon(node)) & 0xFFFFFFFFL;
+            keys[i] = (position << 32) | node;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = (int) keys[i];
+        }
+    }
+}
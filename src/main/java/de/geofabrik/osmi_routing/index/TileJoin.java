@@ -0,0 +1,362 @@
+package de.geofabrik.osmi_routing.index;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.sorting.IndirectComparator;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistanceCalcEarth;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
+
+/**
+ * Search of the closest edges of many query points in one batch instead of one location index
+ * lookup per point.
+ *
+ * The world is divided into square tiles which are at least as large as the search radius. Each
+ * edge is assigned to all tiles its bounding box overlaps. The query points of a tile are matched
+ * against the edges of the tile and of its eight neighbours (halo). Within a tile, the query points
+ * have to be processed in the order of their longitude. A sweep line keeps the edges whose
+ * longitude range is within the search radius of the current point.
+ *
+ * The closest location on an edge and the handling of the search radius are the same as in
+ * {@link ConstrainedLocationIndex}. Results only differ if two edges are exactly equally close.
+ * Edges whose bounding box covers many tiles (e.g. long ferries) are checked by every tile. Tiles
+ * do not wrap around at the antimeridian.
+ *
+ * The assignment of edges to tiles needs 8 bytes per edge and tile.
+ */
+public class TileJoin {
+
+    /** Minimum width and height of a tile in degrees. */
+    static final double MIN_TILE_SIZE = 0.01;
+    /** Edges covering more tiles are checked by every tile. */
+    static final int MAX_EDGE_TILES = 16;
+    /** Latitude used to widen the search window close to the poles. */
+    private static final double MAX_LAT = 89;
+    private static final double METERS_PER_DEGREE = DistanceCalcEarth.C / 360;
+
+    private final Graph graph;
+    // same as the default of LocationIndexTree
+    private final DistanceCalc distCalc = Helper.DIST_PLANE;
+    private final double radius;
+    private final double tileSize;
+    private final int rows;
+    private final int columns;
+    // sorted assignments of edges to tiles, tile key in the upper and edge ID in the lower half
+    private long[] edgeTiles;
+    private final IntArrayList largeEdges = new IntArrayList();
+    // bounding boxes of the large edges, minLat, maxLat, minLon, maxLon
+    private final DoubleArrayList largeEdgeBounds = new DoubleArrayList();
+
+    /**
+     * @param radius search radius in metres
+     */
+    public TileJoin(Graph graph, double radius) {
+        this.graph = graph;
+        this.radius = radius;
+        BBox bounds = graph.getBounds();
+        double maxAbsLat = Math.max(Math.abs(bounds.minLat), Math.abs(bounds.maxLat));
+        this.tileSize = Math.max(MIN_TILE_SIZE, lonDelta(maxAbsLat));
+        this.rows = (int) Math.ceil(180 / tileSize);
+        this.columns = (int) Math.ceil(360 / tileSize);
+        assignEdges();
+    }
+
+    /**
+     * Maximum latitude difference of two locations within the search radius.
+     */
+    private double latDelta() {
+        // add a small margin for rounding errors
+        return 1.01 * radius / METERS_PER_DEGREE;
+    }
+
+    /**
+     * Maximum longitude difference of two locations within the search radius whose latitude
+     * is not further from the equator than the given one.
+     */
+    private double lonDelta(double absLat) {
+        return latDelta() / Math.cos(Math.toRadians(Math.min(MAX_LAT, absLat)));
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat + 90) / tileSize)));
+    }
+
+    private int column(double lon) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon + 180) / tileSize)));
+    }
+
+    private int tileKey(double lat, double lon) {
+        return row(lat) * columns + column(lon);
+    }
+
+    private void assignEdges() {
+        LongArrayList assignments = new LongArrayList();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next()) {
+            PointList geometry = iter.fetchWayGeometry(3);
+            double minLat = Double.MAX_VALUE;
+            double maxLat = -Double.MAX_VALUE;
+            double minLon = Double.MAX_VALUE;
+            double maxLon = -Double.MAX_VALUE;
+            for (int i = 0; i < geometry.size(); ++i) {
+                minLat = Math.min(minLat, geometry.getLat(i));
+                maxLat = Math.max(maxLat, geometry.getLat(i));
+                minLon = Math.min(minLon, geometry.getLon(i));
+                maxLon = Math.max(maxLon, geometry.getLon(i));
+            }
+            int firstRow = row(minLat);
+            int lastRow = row(maxLat);
+            int firstColumn = column(minLon);
+            int lastColumn = column(maxLon);
+            if ((long) (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1) > MAX_EDGE_TILES) {
+                largeEdges.add(iter.getEdge());
+                largeEdgeBounds.add(minLat, maxLat, minLon, maxLon);
+                continue;
+            }
+            for (int row = firstRow; row <= lastRow; ++row) {
+                for (int column = firstColumn; column <= lastColumn; ++column) {
+                    assignments.add(((long) (row * columns + column) << 32) | iter.getEdge());
+                }
+            }
+        }
+        edgeTiles = assignments.toArray();
+        Arrays.sort(edgeTiles);
+    }
+
+    public int getAssignmentCount() {
+        return edgeTiles.length;
+    }
+
+    public int getLargeEdgeCount() {
+        return largeEdges.size();
+    }
+
+    /**
+     * Sort nodes by their tile and by their longitude within each tile. This is the order the
+     * nodes have to be looked up in.
+     *
+     * @param nodes node IDs, will be sorted in place
+     * @return positions in the array where a new tile starts, followed by the length of the array
+     */
+    public int[] sortIntoTiles(int[] nodes) {
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        long[] keys = new long[nodes.length];
+        for (int i = 0; i < nodes.length; ++i) {
+            int node = nodes[i];
+            keys[i] = ((long) tileKey(nodeAccess.getLat(node), nodeAccess.getLon(node)) << 32) | node;
+        }
+        Arrays.sort(keys);
+        IntArrayList tileStarts = new IntArrayList();
+        double[] lons = new double[nodes.length];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = (int) keys[i];
+            lons[i] = nodeAccess.getLon(nodes[i]);
+            if (i == 0 || (keys[i] >>> 32) != (keys[i - 1] >>> 32)) {
+                tileStarts.add(i);
+            }
+        }
+        tileStarts.add(nodes.length);
+        int[] sorted = new int[nodes.length];
+        for (int t = 0; t < tileStarts.size() - 1; ++t) {
+            int start = tileStarts.get(t);
+            int[] order = IndirectSort.mergesort(start, tileStarts.get(t + 1) - start,
+                    new IndirectComparator.AscendingDoubleComparator(lons));
+            for (int i = 0; i < order.length; ++i) {
+                sorted[start + i] = nodes[order[i]];
+            }
+        }
+        System.arraycopy(sorted, 0, nodes, 0, nodes.length);
+        return tileStarts.toArray();
+    }
+
+    private static int lowerBound(long[] array, long key) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Load the edges of the tile of a node and of its halo.
+     */
+    public Tile loadTile(int node) {
+        NodeAccess nodeAccess = graph.getNodeAccess();
+        int key = tileKey(nodeAccess.getLat(node), nodeAccess.getLon(node));
+        int row = key / columns;
+        int column = key % columns;
+        IntArrayList edges = new IntArrayList();
+        for (int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); ++r) {
+            long first = r * columns + Math.max(0, column - 1);
+            long last = r * columns + Math.min(columns - 1, column + 1);
+            int end = lowerBound(edgeTiles, (last + 1) << 32);
+            for (int i = lowerBound(edgeTiles, first << 32); i < end; ++i) {
+                edges.add((int) edgeTiles[i]);
+            }
+        }
+        // area of the tile and its halo
+        double minLat = (row - 1) * tileSize - 90;
+        double maxLat = (row + 2) * tileSize - 90;
+        double minLon = (column - 1) * tileSize - 180;
+        double maxLon = (column + 2) * tileSize - 180;
+        for (int i = 0; i < largeEdges.size(); ++i) {
+            if (largeEdgeBounds.get(4 * i) <= maxLat && largeEdgeBounds.get(4 * i + 1) >= minLat
+                    && largeEdgeBounds.get(4 * i + 2) <= maxLon && largeEdgeBounds.get(4 * i + 3) >= minLon) {
+                edges.add(largeEdges.get(i));
+            }
+        }
+        // Edges crossing tile borders are assigned to multiple tiles.
+        int[] edgeIds = edges.toArray();
+        Arrays.sort(edgeIds);
+        int count = 0;
+        for (int i = 0; i < edgeIds.length; ++i) {
+            if (i == 0 || edgeIds[i] != edgeIds[i - 1]) {
+                edgeIds[count++] = edgeIds[i];
+            }
+        }
+        double maxAbsLat = Math.max(Math.abs(minLat), Math.abs(maxLat));
+        return new Tile(Arrays.copyOf(edgeIds, count), latDelta(), lonDelta(maxAbsLat));
+    }
+
+    /**
+     * Edges of a tile and its halo with the state of the sweep. Instances are not thread-safe.
+     */
+    public class Tile {
+
+        private final EdgeIteratorState[] edges;
+        // geometries of all edges, the points of edge i start at index pointStarts[i]
+        private final int[] pointStarts;
+        private final double[] lats;
+        private final double[] lons;
+        private final double[] minLats;
+        private final double[] maxLats;
+        private final double[] minLons;
+        private final double[] maxLons;
+        // indexes of the edges sorted by their minimum longitude
+        private final int[] order;
+        private final double latDelta;
+        private final double lonDelta;
+        private final EdgeSnap snap;
+        // state of the sweep
+        private int nextEdge = 0;
+        private final IntArrayList activeEdges = new IntArrayList();
+        private double sweepLon = -Double.MAX_VALUE;
+
+        Tile(int[] edgeIds, double latDelta, double lonDelta) {
+            this.latDelta = latDelta;
+            this.lonDelta = lonDelta;
+            this.snap = new EdgeSnap(distCalc);
+            int count = edgeIds.length;
+            edges = new EdgeIteratorState[count];
+            pointStarts = new int[count + 1];
+            minLats = new double[count];
+            maxLats = new double[count];
+            minLons = new double[count];
+            maxLons = new double[count];
+            DoubleArrayList pointLats = new DoubleArrayList();
+            DoubleArrayList pointLons = new DoubleArrayList();
+            for (int i = 0; i < count; ++i) {
+                edges[i] = graph.getEdgeIteratorState(edgeIds[i], Integer.MIN_VALUE);
+                PointList geometry = edges[i].fetchWayGeometry(3);
+                pointStarts[i] = pointLats.size();
+                minLats[i] = Double.MAX_VALUE;
+                maxLats[i] = -Double.MAX_VALUE;
+                minLons[i] = Double.MAX_VALUE;
+                maxLons[i] = -Double.MAX_VALUE;
+                for (int p = 0; p < geometry.size(); ++p) {
+                    double lat = geometry.getLat(p);
+                    double lon = geometry.getLon(p);
+                    pointLats.add(lat);
+                    pointLons.add(lon);
+                    minLats[i] = Math.min(minLats[i], lat);
+                    maxLats[i] = Math.max(maxLats[i], lat);
+                    minLons[i] = Math.min(minLons[i], lon);
+                    maxLons[i] = Math.max(maxLons[i], lon);
+                }
+            }
+            pointStarts[count] = pointLats.size();
+            lats = pointLats.toArray();
+            lons = pointLons.toArray();
+            order = IndirectSort.mergesort(0, count, new IndirectComparator.AscendingDoubleComparator(minLons));
+        }
+
+        public int getEdgeCount() {
+            return edges.length;
+        }
+
+        /**
+         * Find the closest location on an edge accepted by the predicate within the search
+         * radius.
+         *
+         * Calls have to be made in ascending order of the longitude.
+         *
+         * @return result or null if there is no accepted edge within the radius
+         */
+        public QueryResult findClosest(double lat, double lon, EdgeCandidatePredicate predicate) {
+            if (lon < sweepLon) {
+                throw new IllegalArgumentException("Query points have to be passed in ascending order of their longitude.");
+            }
+            sweepLon = lon;
+            while (nextEdge < order.length && minLons[order[nextEdge]] <= lon + lonDelta) {
+                activeEdges.add(order[nextEdge]);
+                ++nextEdge;
+            }
+            double bestNormedDist = distCalc.calcNormalizedDist(radius);
+            int best = -1;
+            int bestClosestNode = -1;
+            int bestWayIndex = 0;
+            QueryResult.Position bestPosition = null;
+            int i = 0;
+            while (i < activeEdges.size()) {
+                int e = activeEdges.get(i);
+                if (maxLons[e] < lon - lonDelta) {
+                    // The edge is too far west for all remaining query points.
+                    activeEdges.set(i, activeEdges.get(activeEdges.size() - 1));
+                    activeEdges.elementsCount--;
+                    continue;
+                }
+                ++i;
+                if (minLats[e] > lat + latDelta || maxLats[e] < lat - latDelta) {
+                    continue;
+                }
+                int first = pointStarts[e];
+                int last = pointStarts[e + 1] - 1;
+                double baseNormedDist = distCalc.calcNormalizedDist(lat, lon, lats[first], lons[first]);
+                double adjNormedDist = distCalc.calcNormalizedDist(lats[last], lons[last], lat, lon);
+                // if there are pillar nodes, this is only an approximation
+                snap.start(adjNormedDist < baseNormedDist ? edges[e].getAdjNode() : edges[e].getBaseNode(), baseNormedDist);
+                for (int p = first; p < last; ++p) {
+                    snap.addSegment(lat, lon, lats[p], lons[p], lats[p + 1], lons[p + 1], p - first, p + 1 == last);
+                }
+                if (snap.normedDist < bestNormedDist && predicate.accept(edges[e], snap.closestNode, snap.position)) {
+                    bestNormedDist = snap.normedDist;
+                    best = e;
+                    bestClosestNode = snap.closestNode;
+                    bestWayIndex = snap.wayIndex;
+                    bestPosition = snap.position;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            return snap.createResult(lat, lon, bestNormedDist, bestClosestNode, edges[best], bestWayIndex, bestPosition);
+        }
+    }
+}
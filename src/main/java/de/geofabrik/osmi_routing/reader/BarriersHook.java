@@ -15,6 +15,8 @@ import com.carrotsearch.hppc.cursors.LongCursor;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderWay;
 import com.graphhopper.reader.osm.OSMReaderHook;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
 
 import de.geofabrik.osmi_routing.OsmiRoutingMain;
 import de.geofabrik.osmi_routing.index.SparseLocationIndex;
@@ -22,6 +24,8 @@ import de.geofabrik.osmi_routing.index.SparseLocationIndex;
 public class BarriersHook extends OSMReaderHook {
 
     static final Logger logger = LogManager.getLogger(BarriersHook.class.getName());
+    // Coordinates are stored on disk as integers with 7 decimal places like in OSM.
+    private static final double COORDINATE_FACTOR = 1e7;
     
     private SparseLocationIndex locationIndex;
     private GeometryFactory geomFactory;
@@ -92,6 +96,59 @@ public class BarriersHook extends OSMReaderHook {
         spatialIndex.build();
     }
 
+    /**
+     * Write the barriers to a file. The spatial index has to be prepared for queries.
+     */
+    public void store(Directory dir, String fileName) {
+        @SuppressWarnings("unchecked")
+        List<LineString> barriers = spatialIndex.query(new Envelope(-180, 180, -90, 90));
+        DataAccess data = dir.find(fileName);
+        data.create(1000);
+        long pointer = 0;
+        for (LineString l : barriers) {
+            data.ensureCapacity(pointer + 4 + 8 * l.getNumPoints());
+            data.setInt(pointer, l.getNumPoints());
+            pointer += 4;
+            for (int i = 0; i < l.getNumPoints(); ++i) {
+                Coordinate c = l.getCoordinateN(i);
+                data.setInt(pointer, (int) Math.round(c.x * COORDINATE_FACTOR));
+                data.setInt(pointer + 4, (int) Math.round(c.y * COORDINATE_FACTOR));
+                pointer += 8;
+            }
+        }
+        data.setHeader(0, barriers.size());
+        data.flush();
+        data.close();
+    }
+
+    /**
+     * Add the barriers of a file written by {@link #store} instead of reading them from OSM data.
+     * {@link #prepareForQuery()} has to be called afterwards.
+     *
+     * @return false if there is no file
+     */
+    public boolean loadExisting(Directory dir, String fileName) {
+        DataAccess data = dir.find(fileName);
+        if (!data.loadExisting()) {
+            return false;
+        }
+        int count = data.getHeader(0);
+        long pointer = 0;
+        for (int l = 0; l < count; ++l) {
+            Coordinate[] coords = new Coordinate[data.getInt(pointer)];
+            pointer += 4;
+            for (int i = 0; i < coords.length; ++i) {
+                coords[i] = new Coordinate(data.getInt(pointer) / COORDINATE_FACTOR, data.getInt(pointer + 4) / COORDINATE_FACTOR);
+                pointer += 8;
+            }
+            LineString lineString = geomFactory.createLineString(coords);
+            spatialIndex.insert(lineString.getEnvelopeInternal(), lineString);
+        }
+        data.close();
+        logger.info("Loaded {} barriers.", count);
+        return true;
+    }
+
     /**
      * Return whether the line from (lon1, lat1) to (lon2, lat2) crosses a linear barrier.
      *
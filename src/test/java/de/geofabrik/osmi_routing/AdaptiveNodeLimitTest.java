@@ -0,0 +1,79 @@
+package de.geofabrik.osmi_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.geofabrik.osmi_routing.algorithm.DijkstraWithLimits.Status;
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+public class AdaptiveNodeLimitTest {
+
+    private static void record(AdaptiveNodeLimit limit, RoadClass roadClass, Status status, int reachedNodes, int times) {
+        for (int i = 0; i < times; ++i) {
+            limit.record(roadClass, status, reachedNodes);
+        }
+    }
+
+    private static int calibrate(RoadClass roadClass, Status status, int reachedNodes, int times) {
+        AdaptiveNodeLimit limit = new AdaptiveNodeLimit(80);
+        record(limit, roadClass, status, reachedNodes, times);
+        limit.calibrate();
+        return limit.getLimit(roadClass);
+    }
+
+    @Test
+    public void testQuantileAndMargin() {
+        AdaptiveNodeLimit limit = new AdaptiveNodeLimit(80);
+        // The slowest 1 % of the searches do not count.
+        record(limit, RoadClass.FOOTWAY, Status.OK, 30, 990);
+        record(limit, RoadClass.FOOTWAY, Status.OK, 70, 10);
+        // The limit does not change before the calibration.
+        assertEquals(80, limit.getLimit(RoadClass.FOOTWAY));
+        assertFalse(limit.isCalibrated());
+        limit.calibrate();
+        assertTrue(limit.isCalibrated());
+        // 31 nodes suffice for 99 % of the searches, plus 25 %
+        assertEquals(39, limit.getLimit(RoadClass.FOOTWAY));
+        // Road classes without searches keep the maximum.
+        assertEquals(80, limit.getLimit(RoadClass.PATH));
+    }
+
+    @Test
+    public void testBounds() {
+        assertEquals(AdaptiveNodeLimit.MIN_LIMIT, calibrate(RoadClass.STEPS, Status.OK, 2, AdaptiveNodeLimit.MIN_SAMPLES));
+        assertEquals(20, calibrate(RoadClass.STEPS, Status.OK, 15, AdaptiveNodeLimit.MIN_SAMPLES));
+        assertEquals(80, calibrate(RoadClass.STEPS, Status.OK, 79, AdaptiveNodeLimit.MIN_SAMPLES));
+    }
+
+    @Test
+    public void testTooFewSamples() {
+        assertEquals(80, calibrate(RoadClass.PATH, Status.OK, 20, AdaptiveNodeLimit.MIN_SAMPLES - 1));
+    }
+
+    @Test
+    public void testFailedSearchesIgnored() {
+        AdaptiveNodeLimit limit = new AdaptiveNodeLimit(80);
+        record(limit, RoadClass.PATH, Status.OK, 20, 500);
+        record(limit, RoadClass.PATH, Status.TOO_MANY_NODES, 80, 5000);
+        record(limit, RoadClass.PATH, Status.TOO_LONG, 40, 5000);
+        limit.calibrate();
+        assertEquals(27, limit.getLimit(RoadClass.PATH));
+    }
+
+    @Test
+    public void testFixedAfterCalibration() {
+        AdaptiveNodeLimit limit = new AdaptiveNodeLimit(80);
+        record(limit, RoadClass.PATH, Status.OK, 20, 500);
+        limit.calibrate();
+        assertEquals(27, limit.getLimit(RoadClass.PATH));
+        // Searches of the detection do not change the limits any more.
+        record(limit, RoadClass.PATH, Status.OK, 60, 5000);
+        record(limit, RoadClass.FOOTWAY, Status.OK, 10, 5000);
+        limit.calibrate();
+        assertEquals(27, limit.getLimit(RoadClass.PATH));
+        assertEquals(80, limit.getLimit(RoadClass.FOOTWAY));
+    }
+}
@@ -0,0 +1,118 @@
+package de.geofabrik.osmi_routing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.Helper;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class CandidateFilterTest {
+
+    private static final String LOCATION = "/tmp/test_candidate_filter";
+
+    private GraphHopperStorage graph;
+    private OsmIdAndNoExitStore nodeInfoStore;
+    private ForkJoinPool pool;
+    private AtomicInteger deadEnds;
+
+    @Before
+    public void setUp() {
+        graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        nodeInfoStore = new OsmIdAndNoExitStore(LOCATION);
+        pool = new ForkJoinPool(4);
+        deadEnds = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    /**
+     * Add a node with OSM ID 1000 + its internal ID.
+     */
+    private void addNode(int node, boolean noExit) {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(node, 50 + 0.001 * (node % 100), 8 + 0.001 * (node / 100));
+        nodeInfoStore.addNodeInfo(node, 1000 + node, noExit);
+    }
+
+    private int[] findCandidates() {
+        return CandidateFilter.findCandidates(pool, graph, nodeInfoStore, deadEnds);
+    }
+
+    @Test
+    public void testFilter() {
+        for (int node = 0; node < 10; ++node) {
+            if (node == 6) {
+                // no OSM ID, a gap in the node info store
+                graph.getNodeAccess().setNode(node, 50.5, 8.5);
+            } else {
+                addNode(node, node == 5);
+            }
+        }
+        graph.edge(0, 1, 100, true);
+        // Node 2 has no edges, node 4 has two.
+        graph.edge(3, 4, 100, true);
+        graph.edge(4, 5, 100, true);
+        graph.edge(6, 7, 100, true);
+        graph.edge(8, 9, 100, true);
+        graph.markNodeRemoved(8);
+        assertArrayEquals(new int[] {0, 1, 3, 7, 9}, findCandidates());
+        // The dead ends 5 (noexit=yes) and 6 (no OSM ID) are no candidates, removed nodes do not count.
+        assertEquals(7, deadEnds.get());
+    }
+
+    @Test
+    public void testDegree() {
+        for (int node = 0; node < 6; ++node) {
+            addNode(node, false);
+        }
+        // Node 0 has no edges.
+        graph.edge(1, 2, 100, true);
+        graph.edge(2, 3, 100, true);
+        graph.edge(4, 5, 100, true);
+        graph.edge(4, 5, 100, true);
+        assertArrayEquals(new int[] {1, 3}, findCandidates());
+        assertEquals(2, deadEnds.get());
+    }
+
+    @Test
+    public void testBlockBorders() {
+        // The node ID range is split into four blocks starting at 0, 50000, 100000 and 150000.
+        int nodes = 4 * 50000;
+        assertTrue(nodes / 4 < CandidateFilter.BLOCK_SIZE);
+        assertTrue(nodes / 2 > CandidateFilter.BLOCK_SIZE);
+        int[] borders = {50000, 100000, 150000};
+        int[] expected = new int[4 * borders.length];
+        for (int i = 0; i < borders.length; ++i) {
+            int border = borders[i];
+            for (int node = border - 2; node <= border + 1; ++node) {
+                addNode(node, false);
+                expected[4 * i + node - border + 2] = node;
+            }
+            // dead ends on both sides of the border
+            graph.edge(border - 2, border + 1, 100, true);
+            graph.edge(border - 1, border, 100, true);
+        }
+        addNode(nodes - 1, false);
+        assertEquals(nodes, graph.getNodes());
+        assertArrayEquals(expected, findCandidates());
+        assertEquals(expected.length, deadEnds.get());
+    }
+}
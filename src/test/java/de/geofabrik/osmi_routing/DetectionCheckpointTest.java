@@ -0,0 +1,106 @@
+package de.geofabrik.osmi_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+public class DetectionCheckpointTest {
+
+    private final String location = "./target/detection-checkpoint-test";
+    private final Path checkpointPath = Paths.get(location, "unconnected_nodes.checkpoint");
+
+    @Before
+    public void setUp() {
+        Helper.removeDir(new File(location));
+        new File(location).mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    private static MissingConnection connection(int id) {
+        return new MissingConnection(new GHPoint(50 + 0.001 * id, 8), new GHPoint(50 + 0.001 * id, 8.0001), 7.2, id,
+                1000 + id, QueryResult.Position.EDGE, RoadClass.RESIDENTIAL, false, 2);
+    }
+
+    private static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        assertNull(DetectionCheckpoint.load(checkpointPath));
+        DetectionCheckpoint checkpoint = new DetectionCheckpoint(100, 500, 700, "radius=15.0");
+        checkpoint.setProgress(64, 12345, false);
+        checkpoint.store(checkpointPath);
+        DetectionCheckpoint loaded = DetectionCheckpoint.load(checkpointPath);
+        loaded.checkResumable(new DetectionCheckpoint(100, 500, 700, "radius=15.0"));
+        assertEquals(64, loaded.getWritten());
+        assertEquals(12345, loaded.getBytes());
+        assertEquals(false, loaded.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOtherSettings() throws IOException {
+        new DetectionCheckpoint(100, 500, 700, "radius=15.0").store(checkpointPath);
+        DetectionCheckpoint.load(checkpointPath).checkResumable(new DetectionCheckpoint(100, 500, 700, "radius=20.0"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOtherGraph() throws IOException {
+        new DetectionCheckpoint(100, 500, 700, "radius=15.0").store(checkpointPath);
+        DetectionCheckpoint.load(checkpointPath).checkResumable(new DetectionCheckpoint(100, 501, 700, "radius=15.0"));
+    }
+
+    private void checkResumedOutput(int checkpointAfter) throws IOException {
+        List<MissingConnection> all = Arrays.asList(connection(1), connection(2), connection(3), connection(4));
+        Path expectedPath = Paths.get(location, "expected.json");
+        GeoJSONWriter expectedWriter = new GeoJSONWriter(expectedPath);
+        expectedWriter.writeMissingConnections(all);
+        expectedWriter.close();
+
+        // interrupted run, the results after the checkpoint are written partially
+        Path path = Paths.get(location, "unconnected_nodes.json");
+        GeoJSONWriter writer = new GeoJSONWriter(path);
+        writer.writeMissingConnections(all.subList(0, checkpointAfter));
+        long size = writer.getFileSize();
+        boolean empty = writer.isEmpty();
+        writer.writeMissingConnections(all.subList(checkpointAfter, all.size() - 1));
+        writer.flush();
+
+        GeoJSONWriter resumed = new GeoJSONWriter(path, size, empty);
+        resumed.writeMissingConnections(all.subList(checkpointAfter, all.size()));
+        resumed.close();
+        assertEquals(read(expectedPath), read(path));
+    }
+
+    @Test
+    public void testResumedOutput() throws IOException {
+        checkResumedOutput(2);
+    }
+
+    @Test
+    public void testResumedOutputWithoutFeatures() throws IOException {
+        checkResumedOutput(0);
+    }
+}
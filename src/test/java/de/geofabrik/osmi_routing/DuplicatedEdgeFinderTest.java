@@ -0,0 +1,162 @@
+package de.geofabrik.osmi_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+import de.geofabrik.osmi_routing.flag_encoders.EdgeAttributes;
+
+public class DuplicatedEdgeFinderTest {
+
+    private static final String LOCATION = "/tmp/test_duplicated_edges";
+
+    private AllRoadsFlagEncoder encoder;
+    private GraphHopperStorage graph;
+    private OsmIdStore wayIdStore;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        encoder = new AllRoadsFlagEncoder();
+        graph = new GraphBuilder(EncodingManager.create(encoder)).set3D(false).create();
+        wayIdStore = new OsmIdStore(LOCATION);
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        Helper.removeDir(new File(LOCATION));
+    }
+
+    private void setNode(int node) {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(node, 50 + 0.001 * (node % 100), 8 + 0.001 * (node / 100));
+    }
+
+    /**
+     * Add an edge with a single pillar node. Edges with the same pillar have the same geometry.
+     */
+    private EdgeIteratorState addEdge(int from, int to, double pillarLat, long wayId) {
+        PointList pillars = new PointList(1, false);
+        pillars.add(pillarLat, 8.5);
+        EdgeIteratorState edge = graph.edge(from, to, 100, true).setWayGeometry(pillars);
+        wayIdStore.addWayId(edge.getEdge(), wayId);
+        return edge;
+    }
+
+    private List<DuplicatedEdge> findDuplicates() {
+        return DuplicatedEdgeFinder.findDuplicates(pool, graph, new EdgeAttributes(encoder), wayIdStore);
+    }
+
+    /**
+     * Check the way IDs of a duplicate. Their order depends on the order of the edges returned by
+     * the edge iterator.
+     */
+    private static void assertDuplicate(DuplicatedEdge duplicate, long wayId1, long wayId2) {
+        assertEquals(wayId1, Math.min(duplicate.getOsmId(), duplicate.getOsmIdOther()));
+        assertEquals(wayId2, Math.max(duplicate.getOsmId(), duplicate.getOsmIdOther()));
+    }
+
+    @Test
+    public void testPairReportedOnce() {
+        for (int node = 0; node < 4; ++node) {
+            setNode(node);
+        }
+        addEdge(0, 1, 50.5, 10);
+        addEdge(0, 1, 50.5, 11);
+        // stored in the opposite direction
+        addEdge(2, 3, 50.5, 20);
+        addEdge(3, 2, 50.5, 21);
+        // same end points and distance but another geometry
+        addEdge(1, 2, 50.5, 30);
+        addEdge(1, 2, 50.6, 31);
+        List<DuplicatedEdge> duplicates = findDuplicates();
+        assertEquals(2, duplicates.size());
+        assertDuplicate(duplicates.get(0), 10, 11);
+        assertDuplicate(duplicates.get(1), 20, 21);
+        assertEquals(3, duplicates.get(0).getGeometry().size());
+    }
+
+    @Test
+    public void testLoops() {
+        setNode(0);
+        setNode(1);
+        addEdge(0, 0, 50.5, 10);
+        addEdge(0, 0, 50.5, 11);
+        // a single loop must not be reported as duplicate of itself
+        addEdge(1, 1, 50.5, 20);
+        List<DuplicatedEdge> duplicates = findDuplicates();
+        assertEquals(1, duplicates.size());
+        assertDuplicate(duplicates.get(0), 10, 11);
+    }
+
+    @Test
+    public void testThreeParallelEdges() {
+        setNode(0);
+        setNode(1);
+        addEdge(0, 1, 50.5, 10);
+        addEdge(0, 1, 50.5, 11);
+        addEdge(0, 1, 50.5, 12);
+        // Each edge is reported with the next edge of the same geometry only.
+        List<DuplicatedEdge> duplicates = findDuplicates();
+        assertEquals(2, duplicates.size());
+        long[] reported = new long[4];
+        for (int i = 0; i < 2; ++i) {
+            reported[2 * i] = duplicates.get(i).getOsmId();
+            reported[2 * i + 1] = duplicates.get(i).getOsmIdOther();
+            assertTrue(reported[2 * i] != reported[2 * i + 1]);
+        }
+        // The edge in the middle of the iteration order is part of both pairs.
+        assertEquals(reported[1], reported[2]);
+        assertEquals(10 + 11 + 12, reported[0] + reported[1] + reported[3]);
+    }
+
+    @Test
+    public void testBlockBorders() {
+        // The node ID range is split into four blocks starting at 0, 50000, 100000 and 150000.
+        int nodes = 4 * 50000;
+        assertTrue(nodes / 4 < DuplicatedEdgeFinder.BLOCK_SIZE);
+        assertTrue(nodes / 2 > DuplicatedEdgeFinder.BLOCK_SIZE);
+        int[] borders = {50000, 100000, 150000};
+        setNode(nodes - 1);
+        long wayId = 1;
+        for (int border : borders) {
+            for (int node = border - 2; node <= border + 1; ++node) {
+                setNode(node);
+            }
+            // last node of a block, an edge crossing the border and first node of a block
+            addEdge(border - 2, border - 1, 50.5, wayId);
+            addEdge(border - 1, border - 2, 50.5, wayId + 1);
+            addEdge(border - 1, border, 50.5, wayId + 2);
+            addEdge(border, border - 1, 50.5, wayId + 3);
+            addEdge(border, border + 1, 50.5, wayId + 4);
+            addEdge(border + 1, border, 50.5, wayId + 5);
+            wayId += 6;
+        }
+        List<DuplicatedEdge> duplicates = findDuplicates();
+        assertEquals(3 * borders.length, duplicates.size());
+        // ordered by the lower node ID of the edges
+        for (int i = 0; i < duplicates.size(); ++i) {
+            assertDuplicate(duplicates.get(i), 2 * i + 1, 2 * i + 2);
+            assertFalse(duplicates.get(i).getGeometry().isEmpty());
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package de.geofabrik.osmi_routing;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
 
 import org.junit.Test;
 
+import com.graphhopper.util.Helper;
+
 public class OsmIdAndNoExitStoreTest {
 
     @Test
@@ -54,4 +60,27 @@ public class OsmIdAndNoExitStoreTest {
             assertEquals(expected, osmId);
         }
     }
+
+    @Test
+    public void testStoreAndLoad() {
+        String location = "./target/osm-id-store-test";
+        Helper.removeDir(new File(location));
+        new File(location).mkdirs();
+        OsmIdAndNoExitStore ext = new OsmIdAndNoExitStore(location);
+        assertFalse(ext.loadExisting());
+        ext.addNodeInfo(3, 3426740052l, true);
+        ext.addNodeInfo(7, 17, false);
+        ext.flush();
+        ext.close();
+
+        OsmIdAndNoExitStore loaded = new OsmIdAndNoExitStore(location);
+        assertTrue(loaded.loadExisting());
+        assertEquals(3426740052l, loaded.getOsmId(3));
+        assertTrue(loaded.getNoExit(3));
+        assertEquals(17, loaded.getOsmId(7));
+        assertFalse(loaded.getNoExit(7));
+        assertEquals(-1, loaded.getOsmId(5));
+        loaded.close();
+        Helper.removeDir(new File(location));
+    }
 }
@@ -0,0 +1,91 @@
+package de.geofabrik.osmi_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder.RoadClass;
+
+public class PriorityTableTest {
+
+    // previous implementation of the priority rules
+    private static int expectedPriority(RoadClass roadClass, boolean isPrivate, double distance, double maxDistance,
+            int[] classPriorities, boolean unimportant) {
+        if (distance == 0) {
+            return 1;
+        }
+        int index = Math.min(3, (int) (distance / (maxDistance / 4)));
+        int priority = classPriorities[index];
+        if (priority > 0 && distance < 1.0 && !unimportant) {
+            priority = 1;
+        } else if (priority > 0 && distance < 2.0 && !unimportant) {
+            priority = 2;
+        } else if (priority > 0 && distance < 2.0 && unimportant) {
+            priority = Math.max(2, priority - 1);
+        }
+        if (isPrivate) {
+            priority += 1;
+        }
+        return priority;
+    }
+
+    @Test
+    public void testDefaults() throws IOException {
+        double maxDistance = 15;
+        PriorityTable table = new PriorityTable(PriorityTable.loadRules(null), maxDistance);
+        double[] distances = {0, 0.5, 1.0, 1.5, 2.0, 3.0, 3.75, 4.0, 7.5, 8.0, 11.25, 12.0, 14.9, 20};
+        for (double distance : distances) {
+            assertEquals(expectedPriority(RoadClass.MOTORWAY, false, distance, maxDistance, new int[]{1, 1, 1, 2}, false),
+                    table.getPriority(RoadClass.MOTORWAY, false, distance));
+            assertEquals(expectedPriority(RoadClass.LIVING_STREET, true, distance, maxDistance, new int[]{2, 3, 3, 4}, false),
+                    table.getPriority(RoadClass.LIVING_STREET, true, distance));
+            assertEquals(expectedPriority(RoadClass.PLATFORM, false, distance, maxDistance, new int[]{5, 5, 5, 6}, true),
+                    table.getPriority(RoadClass.PLATFORM, false, distance));
+            assertEquals(expectedPriority(RoadClass.SERVICE_DRIVEWAY, true, distance, maxDistance, new int[]{4, 4, 5, 5}, true),
+                    table.getPriority(RoadClass.SERVICE_DRIVEWAY, true, distance));
+            assertEquals(expectedPriority(RoadClass.UNDEFINED, false, distance, maxDistance, new int[]{0, 0, 0, 0}, false),
+                    table.getPriority(RoadClass.UNDEFINED, false, distance));
+        }
+    }
+
+    @Test
+    public void testOverride() {
+        Properties rules = new Properties();
+        rules.setProperty("track", "3, 4, 5, 6");
+        rules.setProperty("unimportant", "track");
+        PriorityTable table = new PriorityTable(rules, 20);
+        assertEquals(2, table.getPriority(RoadClass.TRACK, false, 1.5));
+        assertEquals(3, table.getPriority(RoadClass.TRACK, false, 3));
+        assertEquals(5, table.getPriority(RoadClass.TRACK, false, 12));
+        assertEquals(7, table.getPriority(RoadClass.TRACK, true, 19));
+        // classes without rules are not reported
+        assertEquals(0, table.getPriority(RoadClass.MOTORWAY, false, 5));
+    }
+
+    @Test
+    public void testHash() throws IOException {
+        String defaults = new PriorityTable(PriorityTable.loadRules(null), 15).getHash();
+        assertEquals(defaults, new PriorityTable(PriorityTable.loadRules(null), 15).getHash());
+        Properties rules = PriorityTable.loadRules(null);
+        rules.setProperty("track", "3, 4, 5, 6");
+        assertNotEquals(defaults, new PriorityTable(rules, 15).getHash());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownRoadClass() {
+        Properties rules = new Properties();
+        rules.setProperty("highway", "1, 1, 1, 1");
+        new PriorityTable(rules, 15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfValues() {
+        Properties rules = new Properties();
+        rules.setProperty("track", "1, 1, 1");
+        new PriorityTable(rules, 15);
+    }
+}
@@ -0,0 +1,81 @@
+package de.geofabrik.osmi_routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ThroughputTunerTest {
+
+    // best throughput with 6 workers and long chunks
+    private static double throughput(int workers, long targetNanos) {
+        return 1000 - 10 * Math.abs(workers - 6) + (targetNanos > 5000000 ? 5 : 0);
+    }
+
+    private static int tune(ThroughputTuner tuner) {
+        int phases = 0;
+        while (!tuner.isDone()) {
+            tuner.record(throughput(tuner.getWorkers(), tuner.getTargetNanos()));
+            ++phases;
+            assertTrue(phases < 20);
+        }
+        return phases;
+    }
+
+    @Test
+    public void testFindsBestSettings() {
+        ThroughputTuner tuner = new ThroughputTuner(8, 5000000);
+        assertEquals(8, tuner.getWorkers());
+        // warm-up, 8, 6 and 4 workers, then two chunk times
+        assertEquals(6, tune(tuner));
+        assertEquals(6, tuner.getWorkers());
+        assertEquals(20000000, tuner.getTargetNanos());
+    }
+
+    @Test
+    public void testSingleWorker() {
+        ThroughputTuner tuner = new ThroughputTuner(1, 5000000);
+        assertFalse(tuner.isDone());
+        assertEquals(4, tune(tuner));
+        assertEquals(1, tuner.getWorkers());
+        assertEquals(20000000, tuner.getTargetNanos());
+        // further measurements do not change the result
+        tuner.record(10000);
+        assertEquals(1, tuner.getWorkers());
+        assertEquals(20000000, tuner.getTargetNanos());
+    }
+
+    @Test
+    public void testKeepsInitialChunkTime() {
+        ThroughputTuner tuner = new ThroughputTuner(4, 5000000);
+        tuner.record(50);
+        tuner.record(100);
+        tuner.record(90);
+        // back to 4 workers, short chunks are slower
+        assertEquals(4, tuner.getWorkers());
+        assertEquals(1250000, tuner.getTargetNanos());
+        tuner.record(80);
+        assertEquals(20000000, tuner.getTargetNanos());
+        tuner.record(95);
+        assertTrue(tuner.isDone());
+        assertEquals(4, tuner.getWorkers());
+        assertEquals(5000000, tuner.getTargetNanos());
+    }
+
+    @Test
+    public void testWarmUpDiscarded() {
+        ThroughputTuner tuner = new ThroughputTuner(8, 5000000);
+        assertTrue(tuner.isWarmingUp());
+        // The slow warm-up does not make the next setting look like an improvement.
+        tuner.record(50);
+        assertFalse(tuner.isWarmingUp());
+        assertEquals(8, tuner.getWorkers());
+        assertEquals(5000000, tuner.getTargetNanos());
+        tuner.record(100);
+        assertEquals(6, tuner.getWorkers());
+        tuner.record(90);
+        assertEquals(8, tuner.getWorkers());
+        assertEquals(1250000, tuner.getTargetNanos());
+    }
+}
@@ -0,0 +1,99 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class CHDistanceOracleTest {
+
+    private GraphHopperStorage graph;
+    private PrepareContractionHierarchies preparation;
+    private EdgeIteratorState edgeWithPillar;
+
+    // 5x5 grid, neighbouring nodes are 0.0001 degree apart, edge 6-7 has a pillar
+    // The speed is set because GraphHopper calculates the travel time of the paths.
+    public CHDistanceOracleTest() {
+        AllRoadsFlagEncoder encoder = new AllRoadsFlagEncoder();
+        EncodingManager encodingManager = EncodingManager.create(encoder);
+        Weighting weighting = new ShortestWeighting(encoder);
+        graph = new GraphBuilder(encodingManager).set3D(false).setCHGraph(weighting).create();
+        NodeAccess na = graph.getNodeAccess();
+        int size = 5;
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                na.setNode(y * size + x, 50.0 + 0.0001 * y, 8.0 + 0.0001 * x);
+            }
+        }
+        DistanceCalc distCalc = new DistancePlaneProjection();
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                int node = y * size + x;
+                if (x + 1 < size) {
+                    EdgeIteratorState edge = graph.edge(node, node + 1, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + 1), na.getLon(node + 1)), true);
+                    edge.set(encoder.getAverageSpeedEnc(), 10);
+                    if (node == 6) {
+                        PointList pillars = new PointList(1, false);
+                        pillars.add(na.getLat(node), 8.00015);
+                        edge.setWayGeometry(pillars);
+                        edgeWithPillar = edge;
+                    }
+                }
+                if (y + 1 < size) {
+                    graph.edge(node, node + size, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + size), na.getLon(node + size)), true)
+                            .set(encoder.getAverageSpeedEnc(), 10);
+                }
+            }
+        }
+        graph.freeze();
+        preparation = PrepareContractionHierarchies.fromGraphHopperStorage(graph, weighting, TraversalMode.NODE_BASED);
+        preparation.doWork();
+    }
+
+    @Test
+    public void testRouteEqualsDijkstra() {
+        CHDistanceOracle oracle = new CHDistanceOracle(graph, preparation, 1000);
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 1000, 1000);
+        for (int from = 0; from < graph.getNodes(); ++from) {
+            for (int to = 0; to < graph.getNodes(); ++to) {
+                assertEquals(from + "->" + to, dijkstra.routeBidirectional(from, to).distance, oracle.route(from, to), 0.001);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxDistance() {
+        CHDistanceOracle oracle = new CHDistanceOracle(graph, preparation, 20);
+        assertEquals(20, oracle.route(0, 24), 0.000001);
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 1000, 20);
+        assertEquals(dijkstra.routeBidirectional(0, 1).distance, oracle.route(0, 1), 0.001);
+    }
+
+    @Test
+    public void testRouteToPoint() {
+        CHDistanceOracle oracle = new CHDistanceOracle(graph, preparation, 1000);
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 1000, 1000);
+        GHPoint location = new GHPoint(50.0001, 8.000125);
+        double[] offsets = new double[2];
+        dijkstra.distancesAlongEdge(edgeWithPillar, location, offsets);
+        for (int from = 0; from < graph.getNodes(); ++from) {
+            double expected = dijkstra.routeBidirectionalToPoint(from, edgeWithPillar, location).distance;
+            assertEquals(expected, oracle.routeToPoint(from, edgeWithPillar, offsets), 0.001);
+        }
+    }
+}
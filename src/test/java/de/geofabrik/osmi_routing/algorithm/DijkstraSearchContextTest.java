@@ -0,0 +1,70 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class DijkstraSearchContextTest {
+
+    GraphHopperStorage graph;
+
+    public DijkstraSearchContextTest() {
+        EncodingManager encodingManager = EncodingManager.create(new AllRoadsFlagEncoder());
+        graph = new GraphBuilder(encodingManager).set3D(false).create();
+        graph.edge(0, 1, 1, true);
+    }
+
+    @Test
+    public void testAddAndGet() {
+        DijkstraSearchContext context = new DijkstraSearchContext(graph, 4);
+        int slot = context.addNode(17, 2.5, 3);
+        assertEquals(slot, context.getSlot(17));
+        assertEquals(-1, context.getSlot(18));
+        assertEquals(17, context.getNode(slot));
+        assertEquals(2.5, context.getDistance(slot), 0.0);
+        assertEquals(3, context.getParentNode(slot));
+        assertFalse(context.isVisited(slot));
+        context.setVisited(slot);
+        assertTrue(context.isVisited(slot));
+        context.update(slot, 1.5, 4);
+        assertEquals(1.5, context.getDistance(slot), 0.0);
+        assertEquals(4, context.getParentNode(slot));
+    }
+
+    @Test
+    public void testReset() {
+        DijkstraSearchContext context = new DijkstraSearchContext(graph, 4);
+        context.addNode(5, 1, -1);
+        context.addNode(6, 2, 5);
+        assertEquals(2, context.size());
+        context.reset();
+        assertEquals(0, context.size());
+        assertEquals(-1, context.getSlot(5));
+        assertEquals(-1, context.getSlot(6));
+        int slot = context.addNode(6, 3, -1);
+        assertEquals(slot, context.getSlot(6));
+        assertFalse(context.isVisited(slot));
+    }
+
+    @Test
+    public void testGrow() {
+        DijkstraSearchContext context = new DijkstraSearchContext(graph, 4);
+        for (int i = 0; i < 1000; ++i) {
+            context.addNode(i * 31, i, -1);
+        }
+        assertEquals(1000, context.size());
+        for (int i = 0; i < 1000; ++i) {
+            int slot = context.getSlot(i * 31);
+            assertEquals(i * 31, context.getNode(slot));
+            assertEquals(i, context.getDistance(slot), 0.0);
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package de.geofabrik.osmi_routing.algorithm;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.storage.GraphBuilder;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
 import com.graphhopper.util.DistanceCalc2D;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
 
@@ -61,6 +66,242 @@ public class DijkstraWithLimitTest {
         assertEquals(DijkstraWithLimits.Status.OK, r.status);
     }
 
+    @Test
+    public void testRouteUpdatesDistanceOfReachedNode() {
+        // 0-----1-3
+        //  \   /
+        //   \-2
+        GraphHopperStorage g = new GraphBuilder(this.encodingManager).set3D(false).create();
+        g.edge(0, 1, 10, true);
+        g.edge(0, 2, 1, true);
+        g.edge(2, 1, 1, true);
+        g.edge(1, 3, 1, true);
+        DijkstraWithLimits.Result r = new DijkstraWithLimits(g, 100, 40).route(0, 3);
+        assertEquals(DijkstraWithLimits.Status.OK, r.status);
+        assertEquals(3, r.distance, 0.01);
+    }
+
+    @Test
+    public void testRepeatedSearchesWithSameInstance() {
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 100, 40);
+        for (int i = 0; i < 3; ++i) {
+            DijkstraWithLimits.Result r = dijkstra.route(2, 5);
+            assertEquals(DijkstraWithLimits.Status.OK, r.status);
+            assertEquals(3, r.distance, 0.01);
+            r = dijkstra.route(0, 8);
+            assertEquals(DijkstraWithLimits.Status.OK, r.status);
+            assertEquals(3, r.distance, 0.01);
+        }
+    }
+
+    @Test
+    public void testRouteToMany() {
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 100, 40);
+        int[] targets = {5, 7, 8};
+        DijkstraWithLimits.Result[] results = new DijkstraWithLimits.Result[3];
+        dijkstra.routeToMany(2, targets, 3, results);
+        assertEquals(DijkstraWithLimits.Status.OK, results[0].status);
+        assertEquals(3, results[0].distance, 0.01);
+        assertEquals(DijkstraWithLimits.Status.OK, results[1].status);
+        assertEquals(3, results[1].distance, 0.01);
+        assertEquals(DijkstraWithLimits.Status.OK, results[2].status);
+        assertEquals(2, results[2].distance, 0.01);
+        // results equal single searches
+        for (int i = 0; i < targets.length; ++i) {
+            DijkstraWithLimits.Result r = dijkstra.route(2, targets[i]);
+            assertEquals(r.status, results[i].status);
+            assertEquals(r.distance, results[i].distance, 0.01);
+        }
+    }
+
+    @Test
+    public void testRouteToManyLimits() {
+        double maxDistance = 2;
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 100, maxDistance);
+        int[] targets = {3, 5};
+        DijkstraWithLimits.Result[] results = new DijkstraWithLimits.Result[2];
+        dijkstra.routeToMany(1, targets, 2, results);
+        assertEquals(DijkstraWithLimits.Status.OK, results[0].status);
+        assertEquals(2, results[0].distance, 0.01);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, results[1].status);
+        assertEquals(maxDistance, results[1].distance, 0.0001);
+        // the start node is never reached
+        targets[0] = 1;
+        dijkstra.routeToMany(1, targets, 1, results);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, results[0].status);
+    }
+
+    /**
+     * Compare bidirectional search with the reference implementation for all pairs of nodes.
+     *
+     * If the node limit is tight, the reference implementation may succeed where the
+     * bidirectional search runs out of nodes and vice versa. Only distances are compared then.
+     */
+    private void assertBidirectionalEqualsReference(GraphHopperStorage g, int maxNodes, double maxDistance, boolean tightNodeLimit) {
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(g, maxNodes, maxDistance);
+        int okCount = 0;
+        for (int from = 0; from < g.getNodes(); ++from) {
+            for (int to = 0; to < g.getNodes(); ++to) {
+                if (from == to) {
+                    continue;
+                }
+                DijkstraWithLimits.Result reference = dijkstra.route(from, to);
+                DijkstraWithLimits.Result bidirectional = dijkstra.routeBidirectional(from, to);
+                if (reference.status == DijkstraWithLimits.Status.OK && reference.distance <= maxDistance
+                        && (!tightNodeLimit || bidirectional.status == DijkstraWithLimits.Status.OK)) {
+                    assertEquals(DijkstraWithLimits.Status.OK, bidirectional.status);
+                    assertEquals(reference.distance, bidirectional.distance, 0.0001);
+                    ++okCount;
+                } else if (bidirectional.status == DijkstraWithLimits.Status.OK) {
+                    assertTrue(bidirectional.distance <= maxDistance);
+                }
+            }
+        }
+        assertTrue(okCount > 0);
+    }
+
+    @Test
+    public void testBidirectionalEqualsReference() {
+        assertBidirectionalEqualsReference(graph, 100, 40, false);
+        assertBidirectionalEqualsReference(graph, 5, 40, true);
+        assertBidirectionalEqualsReference(graph, 100, 2, false);
+    }
+
+    @Test
+    public void testBidirectionalEqualsReferenceGrid() {
+        // 8x8 grid, edges have length 1
+        GraphHopperStorage g = new GraphBuilder(this.encodingManager).set3D(false).create();
+        int size = 8;
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                if (x + 1 < size) {
+                    g.edge(y * size + x, y * size + x + 1, 1, true);
+                }
+                if (y + 1 < size) {
+                    g.edge(y * size + x, (y + 1) * size + x, 1, true);
+                }
+            }
+        }
+        assertBidirectionalEqualsReference(g, 200, 15, false);
+        assertBidirectionalEqualsReference(g, 30, 15, true);
+        assertBidirectionalEqualsReference(g, 200, 4, false);
+    }
+
+    @Test
+    public void testBidirectionalLimits() {
+        DijkstraWithLimits.Result r = new DijkstraWithLimits(graph, 100, 2).routeBidirectional(1, 5);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, r.status);
+        assertEquals(2, r.distance, 0.0001);
+        r = new DijkstraWithLimits(graph, 3, 40).routeBidirectional(1, 5);
+        assertEquals(DijkstraWithLimits.Status.TOO_MANY_NODES, r.status);
+    }
+
+    @Test
+    public void testBidirectionalToPoint() {
+        //  0---1---2
+        //      |
+        //      3---4(-5-)6
+        // Edge 4-6 has a pillar at 5.
+        GraphHopperStorage g = new GraphBuilder(this.encodingManager).set3D(false).create();
+        NodeAccess na = g.getNodeAccess();
+        na.setNode(0, 0.0, 0.0);
+        na.setNode(1, 0.0, 0.001);
+        na.setNode(2, 0.0, 0.002);
+        na.setNode(3, -0.001, 0.001);
+        na.setNode(4, -0.001, 0.002);
+        na.setNode(6, -0.001, 0.004);
+        DistanceCalc distCalc = new DistancePlaneProjection();
+        double d01 = distCalc.calcDist(0.0, 0.0, 0.0, 0.001);
+        double d13 = distCalc.calcDist(0.0, 0.001, -0.001, 0.001);
+        double d34 = distCalc.calcDist(-0.001, 0.001, -0.001, 0.002);
+        g.edge(0, 1, d01, true);
+        g.edge(1, 2, d01, true);
+        g.edge(1, 3, d13, true);
+        g.edge(3, 4, d34, true);
+        EdgeIteratorState edge = g.edge(4, 6, 2 * d34, true);
+        PointList pillars = new PointList(1, false);
+        pillars.add(-0.001, 0.003);
+        edge.setWayGeometry(pillars);
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(g, 100, 1000);
+        // snapped to pillar
+        DijkstraWithLimits.Result r = dijkstra.routeBidirectionalToPoint(0, edge, new GHPoint(-0.001, 0.003));
+        assertEquals(DijkstraWithLimits.Status.OK, r.status);
+        // GraphHopper stores coordinates with limited precision
+        assertEquals(d01 + d13 + 2 * d34, r.distance, 0.1);
+        // snapped between 4 and the pillar
+        r = dijkstra.routeBidirectionalToPoint(0, edge, new GHPoint(-0.001, 0.0025));
+        assertEquals(DijkstraWithLimits.Status.OK, r.status);
+        assertEquals(d01 + d13 + 1.5 * d34, r.distance, 0.1);
+        double[] offsets = new double[2];
+        dijkstra.distancesAlongEdge(edge, new GHPoint(-0.001, 0.0025), offsets);
+        assertEquals(0.5 * d34, offsets[0], 0.1);
+        assertEquals(1.5 * d34, offsets[1], 0.1);
+    }
+
+    /**
+     * Create a grid with real coordinates. Neighbouring nodes are 0.0001 degree apart.
+     */
+    private GraphHopperStorage createGeoGrid(int size) {
+        GraphHopperStorage g = new GraphBuilder(this.encodingManager).set3D(false).create();
+        NodeAccess na = g.getNodeAccess();
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                na.setNode(y * size + x, 50.0 + 0.0001 * y, 8.0 + 0.0001 * x);
+            }
+        }
+        DistanceCalc distCalc = new DistancePlaneProjection();
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                int node = y * size + x;
+                if (x + 1 < size) {
+                    g.edge(node, node + 1, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + 1), na.getLon(node + 1)), true);
+                }
+                if (y + 1 < size) {
+                    g.edge(node, node + size, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + size), na.getLon(node + size)), true);
+                }
+            }
+        }
+        return g;
+    }
+
+    @Test
+    public void testGoalDirectedBidirectionalEqualsPlain() {
+        GraphHopperStorage g = createGeoGrid(6);
+        DijkstraWithLimits plain = new DijkstraWithLimits(g, 200, 50);
+        DijkstraWithLimits goalDirected = new DijkstraWithLimits(g, 200, 50);
+        goalDirected.setGoalDirected(true);
+        for (int from = 0; from < g.getNodes(); ++from) {
+            for (int to = 0; to < g.getNodes(); ++to) {
+                DijkstraWithLimits.Result expected = plain.routeBidirectional(from, to);
+                DijkstraWithLimits.Result actual = goalDirected.routeBidirectional(from, to);
+                assertEquals(from + "->" + to, expected.status, actual.status);
+                assertEquals(from + "->" + to, expected.distance, actual.distance, 0.000001);
+            }
+        }
+    }
+
+    @Test
+    public void testGoalDirectedDetectsTooLongEarly() {
+        // The target is too far away. A plain search runs into the node limit.
+        GraphHopperStorage g = createGeoGrid(10);
+        DijkstraWithLimits plain = new DijkstraWithLimits(g, 5, 30);
+        DijkstraWithLimits goalDirected = new DijkstraWithLimits(g, 5, 30);
+        goalDirected.setGoalDirected(true);
+        assertEquals(DijkstraWithLimits.Status.TOO_MANY_NODES, plain.route(0, 99).status);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, goalDirected.route(0, 99).status);
+        assertEquals(DijkstraWithLimits.Status.TOO_MANY_NODES, plain.routeBidirectional(0, 99).status);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, goalDirected.routeBidirectional(0, 99).status);
+        int[] targets = {98, 99};
+        DijkstraWithLimits.Result[] results = new DijkstraWithLimits.Result[2];
+        goalDirected.routeToMany(0, targets, 2, results);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, results[0].status);
+        assertEquals(DijkstraWithLimits.Status.TOO_LONG, results[1].status);
+        // a target within reach is still found
+        DijkstraWithLimits.Result r = goalDirected.route(0, 11);
+        assertEquals(DijkstraWithLimits.Status.OK, r.status);
+        assertEquals(new DijkstraWithLimits(g, 200, 30).routeBidirectional(0, 11).distance, r.distance, 0.000001);
+    }
+
     @Test
     public void testRunIntoMaxNodesLimit() {
         int maxNodes = 4;
@@ -70,6 +311,21 @@ public class DijkstraWithLimitTest {
         assertEquals(maxDistance, r.distance, 0.0001);
     }
 
+    @Test
+    public void testSearchSpaceCounters() {
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 100, 40);
+        dijkstra.route(2, 5);
+        assertTrue(dijkstra.getSettledNodes() > 0);
+        assertTrue(dijkstra.getRelaxedEdges() >= dijkstra.getSettledNodes());
+        assertTrue(dijkstra.getReachedNodes() >= dijkstra.getSettledNodes());
+        // lowering the limit to the number of nodes reached before lets the search fail
+        int reached = dijkstra.getReachedNodes();
+        dijkstra.setMaxNodes(reached - 1);
+        assertEquals(DijkstraWithLimits.Status.TOO_MANY_NODES, dijkstra.route(2, 5).status);
+        dijkstra.setMaxNodes(100);
+        assertEquals(DijkstraWithLimits.Status.OK, dijkstra.route(2, 5).status);
+    }
+
     @Test
     public void testRunIntoDistanceLimit() {
         int maxDistance = 2;
@@ -0,0 +1,93 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.GHPoint;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class EdgeDistanceCacheTest {
+
+    private GraphHopperStorage graph;
+    private EdgeIteratorState edge;
+    private DistanceCalc distCalc = new DistancePlaneProjection();
+
+    // 0--(p1)--(p2)--1, segments of 0.001, 0.002 and 0.001 degree
+    public EdgeDistanceCacheTest() {
+        graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 0.0, 0.0);
+        na.setNode(1, 0.0, 0.004);
+        edge = graph.edge(0, 1, distCalc.calcDist(0.0, 0.0, 0.0, 0.004), true);
+        PointList pillars = new PointList(2, false);
+        pillars.add(0.0, 0.001);
+        pillars.add(0.0, 0.003);
+        edge.setWayGeometry(pillars);
+    }
+
+    @Test
+    public void testOffsets() {
+        // GraphHopper stores coordinates with limited precision, therefore the tolerance is 0.1 m.
+        EdgeDistanceCache cache = new EdgeDistanceCache(distCalc, 4);
+        double unit = distCalc.calcDist(0.0, 0.0, 0.0, 0.001);
+        int slot = cache.load(edge);
+        assertEquals(4, cache.getSize(slot));
+        assertEquals(0, cache.getOffset(slot, 0), 0.1);
+        assertEquals(unit, cache.getOffset(slot, 1), 0.1);
+        assertEquals(3 * unit, cache.getOffset(slot, 2), 0.1);
+        assertEquals(4 * unit, cache.getLength(slot), 0.1);
+        // reverse direction
+        EdgeIteratorState reverse = graph.getEdgeIteratorState(edge.getEdge(), 0);
+        slot = cache.load(reverse);
+        assertEquals(0.003, cache.getLon(slot, 1), 0.0000001);
+        assertEquals(unit, cache.getOffset(slot, 1), 0.1);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        cache.load(edge);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testEviction() {
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(2, 0.001, 0.004);
+        EdgeIteratorState other = graph.edge(1, 2, distCalc.calcDist(0.0, 0.004, 0.001, 0.004), true);
+        EdgeIteratorState reverse = graph.getEdgeIteratorState(edge.getEdge(), 0);
+        // a single set, all edges compete for its two slots
+        EdgeDistanceCache cache = new EdgeDistanceCache(distCalc, 2);
+        int slot = cache.load(edge);
+        cache.load(other);
+        assertEquals(slot, cache.load(edge));
+        assertEquals(1, cache.getHits());
+        // replaces the less recently used edge
+        cache.load(reverse);
+        assertEquals(slot, cache.load(edge));
+        assertEquals(2, cache.getHits());
+        cache.load(other);
+        assertEquals(4, cache.getMisses());
+        assertEquals(0.001, cache.getLat(cache.load(other), 1), 0.000001);
+        assertEquals(3, cache.getHits());
+    }
+
+    @Test
+    public void testDistanceOnEdgeEqualsPointListVersion() {
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 100, 1000);
+        GHPoint[] locations = {new GHPoint(0.0, 0.001), new GHPoint(0.0, 0.003), new GHPoint(0.0, 0.002)};
+        for (GHPoint location : locations) {
+            PointList geometry = edge.fetchWayGeometry(3);
+            assertEquals(dijkstra.distanceOnEdge(geometry, location), dijkstra.distanceOnEdge(edge, location, false), 0.000001);
+            geometry.reverse();
+            assertEquals(dijkstra.distanceOnEdge(geometry, location), dijkstra.distanceOnEdge(edge, location, true), 0.000001);
+        }
+    }
+}
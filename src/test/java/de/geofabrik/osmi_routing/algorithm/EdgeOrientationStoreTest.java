@@ -0,0 +1,128 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.AngleCalc;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class EdgeOrientationStoreTest {
+
+    private final String location = "./target/edge-orientation-store-test";
+    private GraphHopperStorage graph;
+    private AngleCalc angleCalc = new AngleCalc();
+
+    //      3
+    //      |
+    //  0---1---2
+    //      |
+    //      4
+    // edges 1-2 and 1-3 have pillars, edge 4-1 is stored in the opposite direction
+    @Before
+    public void setUp() {
+        Helper.removeDir(new File(location));
+        graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        NodeAccess na = graph.getNodeAccess();
+        na.setNode(0, 50.0, 8.0);
+        na.setNode(1, 50.0, 8.001);
+        na.setNode(2, 50.0, 8.002);
+        na.setNode(3, 50.001, 8.001);
+        na.setNode(4, 49.999, 8.001);
+        DistanceCalc distCalc = new DistancePlaneProjection();
+        int[][] edges = {{0, 1}, {1, 2}, {1, 3}, {4, 1}};
+        for (int[] e : edges) {
+            EdgeIteratorState edge = graph.edge(e[0], e[1], distCalc.calcDist(na.getLat(e[0]), na.getLon(e[0]), na.getLat(e[1]), na.getLon(e[1])), true);
+            if (e[1] == 2) {
+                PointList pillars = new PointList(2, false);
+                pillars.add(50.0003, 8.0013);
+                pillars.add(49.9998, 8.0017);
+                edge.setWayGeometry(pillars);
+            } else if (e[1] == 3) {
+                PointList pillars = new PointList(1, false);
+                pillars.add(50.0005, 7.9999);
+                edge.setWayGeometry(pillars);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    private double orientation(PointList points, int from, int to) {
+        return Math.toDegrees(angleCalc.calcOrientation(points.getLat(from), points.getLon(from),
+                points.getLat(to), points.getLon(to), false));
+    }
+
+    private static void assertSameOrientation(String message, double expected, double actual) {
+        double diff = Math.abs(expected - actual) % 360;
+        // -180° and 180° are the same orientation
+        assertEquals(message, 0, Math.min(diff, 360 - diff), 0.01);
+    }
+
+    private void checkEdge(EdgeOrientationStore orientations, EdgeIteratorState edge) {
+        PointList points = edge.fetchWayGeometry(3);
+        int last = points.size() - 1;
+        String message = edge.getBaseNode() + "->" + edge.getAdjNode();
+        assertSameOrientation(message, orientation(points, 0, 1), orientations.getStartOrientation(edge));
+        assertSameOrientation(message, orientation(points, last, last - 1), orientations.getEndOrientation(edge));
+    }
+
+    @Test
+    public void testEqualsGeometry() {
+        EdgeOrientationStore orientations = new EdgeOrientationStore(new RAMDirectory(), "edge_orientations");
+        orientations.prepare(graph);
+        AllEdgesIterator edges = graph.getAllEdges();
+        while (edges.next()) {
+            checkEdge(orientations, edges);
+        }
+        // both directions of all edges
+        EdgeIterator iter = graph.createEdgeExplorer().setBaseNode(1);
+        int count = 0;
+        while (iter.next()) {
+            checkEdge(orientations, iter);
+            checkEdge(orientations, graph.getEdgeIteratorState(iter.getEdge(), 1));
+            ++count;
+        }
+        assertEquals(4, count);
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        EdgeOrientationStore orientations = new EdgeOrientationStore(new GHDirectory(location, DAType.RAM_STORE).create(), "edge_orientations");
+        assertFalse(orientations.loadExisting(graph));
+        orientations.prepare(graph);
+        orientations.flush();
+        EdgeIteratorState edge = graph.getEdgeIteratorState(1, 2);
+        double expected = orientations.getEndOrientation(edge);
+        orientations.close();
+
+        orientations = new EdgeOrientationStore(new GHDirectory(location, DAType.RAM_STORE).create(), "edge_orientations");
+        assertTrue(orientations.loadExisting(graph));
+        assertEquals(expected, orientations.getEndOrientation(edge), 0);
+        orientations.close();
+    }
+}
@@ -0,0 +1,60 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntDoubleBinaryHeapTest {
+
+    @Test
+    public void testPollOrder() {
+        IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap(2);
+        heap.push(7, 3.5);
+        heap.push(3, 1.0);
+        heap.push(9, 7.25);
+        heap.push(1, 0.5);
+        heap.push(4, 2.0);
+        assertEquals(5, heap.size());
+        assertEquals(0.5, heap.peekKey(), 0.0);
+        assertEquals(1, heap.poll());
+        assertEquals(3, heap.poll());
+        assertEquals(4, heap.poll());
+        assertEquals(7, heap.poll());
+        assertEquals(9, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testRandomKeys() {
+        Random random = new Random(42);
+        IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap();
+        double[] keys = new double[1000];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = random.nextDouble() * 100;
+            heap.push(i, keys[i]);
+        }
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ++i) {
+            assertEquals(sorted[i], heap.peekKey(), 0.0);
+            int element = heap.poll();
+            assertEquals(sorted[i], keys[element], 0.0);
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        IntDoubleBinaryHeap heap = new IntDoubleBinaryHeap();
+        heap.push(1, 1.0);
+        heap.push(2, 2.0);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        heap.push(3, 3.0);
+        assertEquals(3, heap.poll());
+    }
+}
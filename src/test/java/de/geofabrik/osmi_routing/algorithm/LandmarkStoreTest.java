@@ -0,0 +1,119 @@
+package de.geofabrik.osmi_routing.algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.DAType;
+import com.graphhopper.storage.GHDirectory;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.Helper;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class LandmarkStoreTest {
+
+    private final String location = "./target/landmark-store-test";
+    GraphHopperStorage graph;
+
+    //  0---1---2---3
+    //  |       |   |
+    //  4---5   6---7
+    //      |       |
+    //      8---9---10
+    @Before
+    public void setUp() {
+        Helper.removeDir(new File(location));
+        graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int i = 0; i < 4; ++i) {
+            na.setNode(i, 50.0, 8.0 + 0.001 * i);
+        }
+        na.setNode(4, 49.999, 8.0);
+        na.setNode(5, 49.999, 8.001);
+        na.setNode(6, 49.999, 8.002);
+        na.setNode(7, 49.999, 8.003);
+        na.setNode(8, 49.998, 8.001);
+        na.setNode(9, 49.998, 8.002);
+        na.setNode(10, 49.998, 8.003);
+        int[][] edges = {{0, 1}, {1, 2}, {2, 3}, {0, 4}, {2, 6}, {3, 7}, {4, 5}, {6, 7}, {5, 8}, {7, 10}, {8, 9}, {9, 10}};
+        DistanceCalc distCalc = new DistancePlaneProjection();
+        for (int[] e : edges) {
+            graph.edge(e[0], e[1], distCalc.calcDist(na.getLat(e[0]), na.getLon(e[0]), na.getLat(e[1]), na.getLon(e[1])), true);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testLowerBoundIsAdmissible() {
+        LandmarkStore landmarks = new LandmarkStore(new RAMDirectory(), "landmarks");
+        landmarks.prepare(graph, 3);
+        assertEquals(3, landmarks.getLandmarkCount());
+        DijkstraWithLimits dijkstra = new DijkstraWithLimits(graph, 1000, 10000);
+        int[] targetDistances = new int[3];
+        boolean tight = false;
+        for (int from = 0; from < graph.getNodes(); ++from) {
+            for (int to = 0; to < graph.getNodes(); ++to) {
+                landmarks.getDistances(to, targetDistances, 0);
+                double bound = landmarks.getLowerBound(from, targetDistances, 0);
+                double distance = dijkstra.routeBidirectional(from, to).distance;
+                assertTrue(from + "->" + to, bound <= distance);
+                tight |= bound > 0.95 * distance && distance > 0;
+            }
+        }
+        assertTrue(tight);
+    }
+
+    @Test
+    public void testGoalDirectedWithLandmarksEqualsPlain() {
+        LandmarkStore landmarks = new LandmarkStore(new RAMDirectory(), "landmarks");
+        landmarks.prepare(graph, 2);
+        DijkstraWithLimits plain = new DijkstraWithLimits(graph, 100, 400);
+        DijkstraWithLimits goalDirected = new DijkstraWithLimits(graph, 100, 400);
+        goalDirected.setGoalDirected(true);
+        goalDirected.setLandmarks(landmarks);
+        for (int from = 0; from < graph.getNodes(); ++from) {
+            for (int to = 0; to < graph.getNodes(); ++to) {
+                DijkstraWithLimits.Result expected = plain.routeBidirectional(from, to);
+                DijkstraWithLimits.Result actual = goalDirected.routeBidirectional(from, to);
+                assertEquals(from + "->" + to, expected.status, actual.status);
+                assertEquals(from + "->" + to, expected.distance, actual.distance, 0.000001);
+            }
+        }
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        LandmarkStore landmarks = new LandmarkStore(new GHDirectory(location, DAType.RAM_STORE).create(), "landmarks");
+        assertFalse(landmarks.loadExisting(graph, 2));
+        landmarks.prepare(graph, 2);
+        landmarks.flush();
+        int expected = landmarks.getDistance(1, 9);
+        landmarks.close();
+
+        landmarks = new LandmarkStore(new GHDirectory(location, DAType.RAM_STORE).create(), "landmarks");
+        assertTrue(landmarks.loadExisting(graph, 2));
+        assertEquals(expected, landmarks.getDistance(1, 9));
+        landmarks.close();
+        // different number of landmarks
+        landmarks = new LandmarkStore(new GHDirectory(location, DAType.RAM_STORE).create(), "landmarks");
+        assertFalse(landmarks.loadExisting(graph, 3));
+        landmarks.close();
+    }
+}
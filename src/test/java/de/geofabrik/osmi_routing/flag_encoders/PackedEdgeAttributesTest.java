@@ -0,0 +1,60 @@
+package de.geofabrik.osmi_routing.flag_encoders;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.graphhopper.reader.ReaderWay;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.IntsRef;
+import com.graphhopper.util.EdgeIteratorState;
+
+public class PackedEdgeAttributesTest {
+
+    private AllRoadsFlagEncoder encoder = new AllRoadsFlagEncoder();
+    private EncodingManager encodingManager = EncodingManager.create(encoder);
+
+    private void addEdge(GraphHopperStorage graph, int from, int to, String... tags) {
+        ReaderWay way = new ReaderWay(from);
+        way.getNodes().add(from);
+        way.getNodes().add(to);
+        way.getNodes().add(from + 100);
+        way.getNodes().add(from);
+        for (int i = 0; i < tags.length; i += 2) {
+            way.setTag(tags[i], tags[i + 1]);
+        }
+        IntsRef flags = encoder.handleWayTags(encodingManager.createEdgeFlags(), way, encoder.getAccess(way), 0);
+        graph.edge(from, to, 10, true).setFlags(flags);
+    }
+
+    @Test
+    public void testEqualsDecodedAttributes() {
+        GraphHopperStorage graph = new GraphBuilder(encodingManager).set3D(false).create();
+        addEdge(graph, 0, 1, "highway", "residential");
+        addEdge(graph, 1, 2, "highway", "service", "service", "driveway", "access", "private");
+        addEdge(graph, 2, 3, "highway", "pedestrian", "area", "yes");
+        addEdge(graph, 3, 4, "highway", "footway", "level", "-7");
+        addEdge(graph, 4, 5, "highway", "footway", "level", "7");
+        addEdge(graph, 5, 6, "highway", "steps", "level", "1;2");
+        addEdge(graph, 6, 7, "highway", "primary", "layer", "-1");
+        addEdge(graph, 7, 8, "highway", "footway", "level", "invalid");
+        EdgeAttributes decoded = new EdgeAttributes(encoder);
+        PackedEdgeAttributes packed = new PackedEdgeAttributes(graph, encoder);
+        for (int edge = 0; edge < graph.getAllEdges().length(); ++edge) {
+            EdgeIteratorState state = graph.getEdgeIteratorState(edge, Integer.MIN_VALUE);
+            assertEquals(decoded.getRoadClass(state), packed.getRoadClass(state));
+            assertEquals(decoded.isPrivateAccess(state), packed.isPrivateAccess(state));
+            assertEquals(decoded.isArea(state), packed.isArea(state));
+            assertEquals(decoded.isLevelValid(state), packed.isLevelValid(state));
+            assertEquals(decoded.getLevel(state), packed.getLevel(state));
+            assertEquals(decoded.getLevelDiff(state), packed.getLevelDiff(state));
+        }
+        EdgeIteratorState area = graph.getEdgeIteratorState(2, Integer.MIN_VALUE);
+        assertEquals(true, packed.isArea(area));
+        EdgeIteratorState steps = graph.getEdgeIteratorState(5, Integer.MIN_VALUE);
+        assertEquals(1, packed.getLevel(steps));
+        assertEquals(1, packed.getLevelDiff(steps));
+    }
+}
@@ -0,0 +1,144 @@
+package de.geofabrik.osmi_routing.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.osmi_routing.algorithm.EdgeDistanceCache;
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class ConstrainedLocationIndexTest {
+
+    private GraphHopperStorage graph;
+    private ConstrainedLocationIndex index;
+    private DistanceCalc distCalc = new DistancePlaneProjection();
+
+    private static final EdgeCandidatePredicate ALL = new EdgeCandidatePredicate() {
+        @Override
+        public boolean accept(EdgeIteratorState edge, int closestNode, QueryResult.Position position) {
+            return true;
+        }
+    };
+
+    // 5x5 grid, neighbouring nodes are 0.0005 degree apart, edge 6-7 has a pillar
+    public ConstrainedLocationIndexTest() {
+        graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        NodeAccess na = graph.getNodeAccess();
+        int size = 5;
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                na.setNode(y * size + x, 50.0 + 0.0005 * y, 8.0 + 0.0005 * x);
+            }
+        }
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                int node = y * size + x;
+                if (x + 1 < size) {
+                    EdgeIteratorState edge = graph.edge(node, node + 1, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + 1), na.getLon(node + 1)), true);
+                    if (node == 6) {
+                        PointList pillars = new PointList(1, false);
+                        pillars.add(na.getLat(node) + 0.0002, 8.00075);
+                        edge.setWayGeometry(pillars);
+                    }
+                }
+                if (y + 1 < size) {
+                    graph.edge(node, node + size, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + size), na.getLon(node + size)), true);
+                }
+            }
+        }
+        index = new ConstrainedLocationIndex(graph, new RAMDirectory());
+        index.setResolution(50);
+        index.prepareIndex();
+    }
+
+    private QueryResult findClosestFiltered(double lat, double lon, EdgeCandidatePredicate predicate, double radius) {
+        List<QueryResult> results = index.findNClosest(lat, lon, EdgeFilter.ALL_EDGES, radius);
+        QueryResult closest = null;
+        for (QueryResult r : results) {
+            if (r.getQueryDistance() < radius && predicate.accept(r.getClosestEdge(), r.getClosestNode(), r.getSnappedPosition())
+                    && (closest == null || r.getQueryDistance() < closest.getQueryDistance())) {
+                closest = r;
+            }
+        }
+        return closest;
+    }
+
+    private void assertSameResult(QueryResult expected, QueryResult actual) {
+        assertEquals(expected.getClosestEdge().getEdge(), actual.getClosestEdge().getEdge());
+        assertEquals(expected.getClosestNode(), actual.getClosestNode());
+        assertEquals(expected.getSnappedPosition(), actual.getSnappedPosition());
+        assertEquals(expected.getQueryDistance(), actual.getQueryDistance(), 0.001);
+        assertEquals(expected.getSnappedPoint().lat, actual.getSnappedPoint().lat, 0.0000001);
+        assertEquals(expected.getSnappedPoint().lon, actual.getSnappedPoint().lon, 0.0000001);
+    }
+
+    @Test
+    public void testEqualsFindNClosest() {
+        ConstrainedLocationIndex.Query query = index.createQuery(new EdgeDistanceCache(distCalc, 16));
+        double[][] locations = {{50.00051, 8.00072}, {50.0007, 8.0007}, {50.00126, 8.00101}, {50.0002, 8.0019}};
+        for (double[] location : locations) {
+            QueryResult expected = findClosestFiltered(location[0], location[1], ALL, 200);
+            assertSameResult(expected, query.findClosest(location[0], location[1], ALL, 200));
+        }
+    }
+
+    @Test
+    public void testPredicate() {
+        ConstrainedLocationIndex.Query query = index.createQuery(new EdgeDistanceCache(distCalc, 16));
+        // exclude all edges of node 6
+        EdgeCandidatePredicate notNode6 = new EdgeCandidatePredicate() {
+            @Override
+            public boolean accept(EdgeIteratorState edge, int closestNode, QueryResult.Position position) {
+                return edge.getBaseNode() != 6 && edge.getAdjNode() != 6;
+            }
+        };
+        QueryResult expected = findClosestFiltered(50.00051, 8.00052, notNode6, 200);
+        QueryResult actual = query.findClosest(50.00051, 8.00052, notNode6, 200);
+        assertSameResult(expected, actual);
+        assertNotEquals(6, actual.getClosestEdge().getBaseNode());
+        assertNotEquals(6, actual.getClosestEdge().getAdjNode());
+    }
+
+    @Test
+    public void testRadius() {
+        ConstrainedLocationIndex.Query query = index.createQuery(new EdgeDistanceCache(distCalc, 16));
+        // 0.0002 degree latitude are about 22 m
+        assertNull(query.findClosest(49.9998, 8.0, ALL, 20));
+        assertEquals(22.2, query.findClosest(49.9998, 8.0, ALL, 25).getQueryDistance(), 0.1);
+    }
+
+    @Test
+    public void testEscalatingRadii() {
+        ConstrainedLocationIndex.Query query = index.createQuery(new EdgeDistanceCache(distCalc, 16));
+        double[] radii = {5, 10, 20, 40};
+        // distances to the closest edge are 2 m, 7 m, 18 m, 22 m and 44 m
+        double[][] locations = {{50.0001, 8.00003}, {50.0001, 8.0001}, {50.0002, 8.00025}, {49.9998, 8.0}, {49.9996, 8.0}};
+        int[] steps = {0, 1, 2, 3, 4};
+        for (int i = 0; i < locations.length; ++i) {
+            QueryResult expected = query.findClosest(locations[i][0], locations[i][1], ALL, 40);
+            QueryResult actual = query.findClosest(locations[i][0], locations[i][1], ALL, radii);
+            assertEquals(steps[i], query.getLastStep());
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertSameResult(expected, actual);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.geofabrik.osmi_routing.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class HilbertOrderTest {
+
+    @Test
+    public void testNeighbouringPositionsAreNeighbouringCells() {
+        // Walk along the first 4096 positions of the curve, each step moves to an adjacent cell.
+        int size = 64;
+        int[] xs = new int[size * size];
+        int[] ys = new int[size * size];
+        for (int x = 0; x < size; ++x) {
+            for (int y = 0; y < size; ++y) {
+                int d = HilbertOrder.index(x, y);
+                assertTrue(d < size * size);
+                xs[d] = x;
+                ys[d] = y;
+            }
+        }
+        for (int d = 1; d < size * size; ++d) {
+            assertEquals(1, Math.abs(xs[d] - xs[d - 1]) + Math.abs(ys[d] - ys[d - 1]));
+        }
+    }
+
+    @Test
+    public void testSortNodes() {
+        GraphHopperStorage graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        NodeAccess na = graph.getNodeAccess();
+        // two clusters, IDs alternate between them
+        for (int i = 0; i < 10; ++i) {
+            if (i % 2 == 0) {
+                na.setNode(i, 49.0 + 0.0001 * i, 8.0);
+            } else {
+                na.setNode(i, -33.0 + 0.0001 * i, 151.0);
+            }
+        }
+        int[] order = new int[graph.getNodes()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        HilbertOrder.sortNodes(na, order);
+        assertEquals(10, order.length);
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, sorted[i]);
+        }
+        // The nodes of each cluster are consecutive.
+        int changes = 0;
+        for (int i = 1; i < order.length; ++i) {
+            if (order[i] % 2 != order[i - 1] % 2) {
+                ++changes;
+            }
+        }
+        assertEquals(1, changes);
+    }
+}
@@ -0,0 +1,163 @@
+package de.geofabrik.osmi_routing.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.DistanceCalc;
+import com.graphhopper.util.DistancePlaneProjection;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.PointList;
+
+import de.geofabrik.osmi_routing.algorithm.EdgeDistanceCache;
+import de.geofabrik.osmi_routing.flag_encoders.AllRoadsFlagEncoder;
+
+public class TileJoinTest {
+
+    private static final int SIZE = 9;
+    private static final double SPACING = 0.003;
+    private GraphHopperStorage graph;
+    private DistanceCalc distCalc = new DistancePlaneProjection();
+
+    private static final EdgeCandidatePredicate ALL = new EdgeCandidatePredicate() {
+        @Override
+        public boolean accept(EdgeIteratorState edge, int closestNode, QueryResult.Position position) {
+            return true;
+        }
+    };
+
+    private static final EdgeCandidatePredicate SOME = new EdgeCandidatePredicate() {
+        @Override
+        public boolean accept(EdgeIteratorState edge, int closestNode, QueryResult.Position position) {
+            return edge.getEdge() % 3 != 0 && closestNode % 4 != 0;
+        }
+    };
+
+    // 9x9 grid covering multiple tiles, every other horizontal edge has a pillar, the last node
+    // is far away and connected to node 0 by an edge covering many tiles
+    public TileJoinTest() {
+        graph = new GraphBuilder(EncodingManager.create(new AllRoadsFlagEncoder())).set3D(false).create();
+        NodeAccess na = graph.getNodeAccess();
+        for (int y = 0; y < SIZE; ++y) {
+            for (int x = 0; x < SIZE; ++x) {
+                na.setNode(y * SIZE + x, 50.0 + SPACING * y, 8.0 + SPACING * x);
+            }
+        }
+        for (int y = 0; y < SIZE; ++y) {
+            for (int x = 0; x < SIZE; ++x) {
+                int node = y * SIZE + x;
+                if (x + 1 < SIZE) {
+                    EdgeIteratorState edge = graph.edge(node, node + 1, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + 1), na.getLon(node + 1)), true);
+                    if (node % 2 == 0) {
+                        PointList pillars = new PointList(1, false);
+                        pillars.add(na.getLat(node) + 0.3 * SPACING, na.getLon(node) + 0.5 * SPACING);
+                        edge.setWayGeometry(pillars);
+                    }
+                }
+                if (y + 1 < SIZE) {
+                    graph.edge(node, node + SIZE, distCalc.calcDist(na.getLat(node), na.getLon(node), na.getLat(node + SIZE), na.getLon(node + SIZE)), true);
+                }
+            }
+        }
+        int far = SIZE * SIZE;
+        na.setNode(far, 50.1, 8.1);
+        graph.edge(0, far, distCalc.calcDist(50.0, 8.0, 50.1, 8.1), true);
+    }
+
+    @Test
+    public void testSortIntoTiles() {
+        TileJoin join = new TileJoin(graph, 200);
+        assertEquals(1, join.getLargeEdgeCount());
+        int[] nodes = new int[graph.getNodes()];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = nodes.length - 1 - i;
+        }
+        int[] tileStarts = join.sortIntoTiles(nodes);
+        assertTrue(tileStarts.length > 2);
+        assertEquals(nodes.length, tileStarts[tileStarts.length - 1]);
+        NodeAccess na = graph.getNodeAccess();
+        for (int t = 0; t < tileStarts.length - 1; ++t) {
+            for (int i = tileStarts[t] + 1; i < tileStarts[t + 1]; ++i) {
+                assertTrue(na.getLon(nodes[i - 1]) <= na.getLon(nodes[i]));
+            }
+        }
+        int[] sorted = nodes.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; ++i) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    private void checkEqualsIndex(EdgeCandidatePredicate predicate, double radius) {
+        ConstrainedLocationIndex index = new ConstrainedLocationIndex(graph, new RAMDirectory());
+        index.prepareIndex();
+        ConstrainedLocationIndex.Query query = index.createQuery(new EdgeDistanceCache(distCalc, 16));
+        TileJoin join = new TileJoin(graph, radius);
+        // add query points as nodes to sort them like the nodes of the graph
+        NodeAccess na = graph.getNodeAccess();
+        Random random = new Random(42);
+        int first = graph.getNodes();
+        int count = 300;
+        int[] nodes = new int[count];
+        for (int i = 0; i < count; ++i) {
+            nodes[i] = first + i;
+            na.setNode(first + i, 50.0 - SPACING + random.nextDouble() * (SIZE + 1) * SPACING,
+                    8.0 - SPACING + random.nextDouble() * (SIZE + 1) * SPACING);
+        }
+        int[] tileStarts = join.sortIntoTiles(nodes);
+        int found = 0;
+        for (int t = 0; t < tileStarts.length - 1; ++t) {
+            TileJoin.Tile tile = join.loadTile(nodes[tileStarts[t]]);
+            for (int i = tileStarts[t]; i < tileStarts[t + 1]; ++i) {
+                double lat = na.getLat(nodes[i]);
+                double lon = na.getLon(nodes[i]);
+                QueryResult expected = query.findClosest(lat, lon, predicate, radius);
+                QueryResult actual = tile.findClosest(lat, lon, predicate);
+                if (expected == null) {
+                    assertNull(actual);
+                    continue;
+                }
+                ++found;
+                assertEquals(expected.getClosestNode(), actual.getClosestNode());
+                assertEquals(expected.getSnappedPosition(), actual.getSnappedPosition());
+                if (expected.getSnappedPosition() != QueryResult.Position.TOWER) {
+                    // all edges of a tower node are equally close
+                    assertEquals(expected.getClosestEdge().getEdge(), actual.getClosestEdge().getEdge());
+                }
+                assertEquals(expected.getQueryDistance(), actual.getQueryDistance(), 0.001);
+                assertEquals(expected.getSnappedPoint().lat, actual.getSnappedPoint().lat, 0.0000001);
+                assertEquals(expected.getSnappedPoint().lon, actual.getSnappedPoint().lon, 0.0000001);
+            }
+        }
+        assertTrue(found > count / 2);
+    }
+
+    @Test
+    public void testEqualsLocationIndex() {
+        checkEqualsIndex(ALL, 200);
+    }
+
+    @Test
+    public void testEqualsLocationIndexWithPredicate() {
+        checkEqualsIndex(SOME, 150);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrderOfQueries() {
+        TileJoin join = new TileJoin(graph, 200);
+        TileJoin.Tile tile = join.loadTile(0);
+        tile.findClosest(50.0, 8.001, ALL);
+        tile.findClosest(50.0, 8.0, ALL);
+    }
+}